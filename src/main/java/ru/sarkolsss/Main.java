@@ -1,32 +1,109 @@
 package ru.sarkolsss;
 
+import ru.sarkolsss.bytecode.JniCostModel;
+import ru.sarkolsss.bytecode.ProfileSelector;
 import ru.sarkolsss.core.TranspilerEngine;
+import ru.sarkolsss.core.TranspilerOptions;
 import ru.sarkolsss.utils.Logger;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Main {
     public static void main(String[] args) {
         if (args.length < 2) {
-            Logger.error("Usage: java2cpp <input.jar> <output.jar> [skip]");
-            Logger.info("Options:");
-            Logger.info("  skip  - Transpile all methods without @Native annotation check");
+            printUsage();
             System.exit(1);
         }
 
-        boolean skipAnnotationCheck = false;
-        if (args.length >= 3 && "skip".equalsIgnoreCase(args[2])) {
-            skipAnnotationCheck = true;
-            Logger.info("Skip annotation check enabled");
+        boolean batchMode = "--batch".equals(args[0]);
+        Path batchOutputDir = batchMode ? Paths.get(args[1]) : null;
+
+        TranspilerOptions options = new TranspilerOptions();
+        List<Path> inputJars = new ArrayList<>();
+        List<Path> outputJars = new ArrayList<>();
+
+        if (!batchMode) {
+            inputJars.add(Paths.get(args[0]));
+            outputJars.add(Paths.get(args[1]));
+        }
+
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+
+            if ("skip".equalsIgnoreCase(arg)) {
+                options.skipAnnotationCheck = true;
+                Logger.info("Skip annotation check enabled");
+            } else if ("--lib".equals(arg) && i + 1 < args.length) {
+                options.libraryJars.add(Paths.get(args[++i]));
+            } else if ("--shrink".equals(arg)) {
+                options.shrink = true;
+            } else if ("--entry".equals(arg) && i + 1 < args.length) {
+                options.entryPoints.add(args[++i]);
+            } else if ("--inline-budget".equals(arg) && i + 1 < args.length) {
+                options.inlineBudget = Integer.parseInt(args[++i]);
+            } else if ("--profile".equals(arg) && i + 1 < args.length) {
+                options.profiles.add(Paths.get(args[++i]));
+            } else if ("--profile-budget".equals(arg) && i + 1 < args.length) {
+                options.profileBudget = Integer.parseInt(args[++i]);
+            } else if ("--max-jni-slowdown".equals(arg) && i + 1 < args.length) {
+                options.maxJniSlowdown = Double.parseDouble(args[++i]);
+            } else if ("--keep-jni-bound".equals(arg)) {
+                options.keepJniBound = true;
+            } else if (batchMode && !arg.startsWith("--")) {
+                Path inputJar = Paths.get(arg);
+                inputJars.add(inputJar);
+                outputJars.add(batchOutputDir.resolve(inputJar.getFileName()));
+            } else {
+                Logger.error("Unknown option: " + arg);
+                printUsage();
+                System.exit(1);
+            }
+        }
+
+        if (inputJars.isEmpty()) {
+            Logger.error("No input JARs given");
+            printUsage();
+            System.exit(1);
+        }
+
+        if (batchMode) {
+            Logger.info("Batch mode: " + inputJars.size() + " JARs -> " + batchOutputDir);
+            try {
+                java.nio.file.Files.createDirectories(batchOutputDir);
+            } catch (java.io.IOException e) {
+                Logger.error("Failed to create output directory: " + e.getMessage());
+                System.exit(1);
+            }
         }
 
         TranspilerEngine engine = new TranspilerEngine(
-                Paths.get(args[0]),
-                Paths.get(args[1]),
-                skipAnnotationCheck
+                inputJars,
+                outputJars,
+                options
         );
 
         engine.execute();
 
         Logger.success("Transpilation completed successfully!");
     }
-}
\ No newline at end of file
+
+    private static void printUsage() {
+        Logger.error("Usage: java2cpp <input.jar> <output.jar> [options]");
+        Logger.error("       java2cpp --batch <output-dir> <input.jar>... [options]");
+        Logger.info("Options:");
+        Logger.info("  skip         - Transpile all methods without @Native annotation check");
+        Logger.info("  --lib <jar>  - Library JAR used to resolve the class hierarchy (repeatable)");
+        Logger.info("  --shrink     - Only transpile methods reachable from Main-Class and --entry roots");
+        Logger.info("  --entry <r>  - Reachability root: pkg/Class or pkg/Class.method (repeatable)");
+        Logger.info("  --inline-budget <n> - Max instructions of a callee inlined into native code (0 disables)");
+        Logger.info("  --profile <f.jfr>   - Add the hottest compute-bound methods of a JFR recording (repeatable)");
+        Logger.info("  --profile-budget <n> - Max methods selected from profiles (default " + ProfileSelector.DEFAULT_BUDGET + ")");
+        Logger.info("  --max-jni-slowdown <x> - Exclude methods estimated to run x times slower as native (default "
+                + JniCostModel.DEFAULT_MAX_SLOWDOWN + ")");
+        Logger.info("  --keep-jni-bound    - Only warn about JNI-bound methods instead of excluding them");
+        Logger.info("Batch mode compiles one shared native library for all input JARs");
+        Logger.info("and writes each rewritten JAR to <output-dir> under its original name.");
+    }
+}
@@ -1,23 +1,44 @@
 package ru.sarkolsss.bytecode;
 
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.MethodNode;
 import ru.sarkolsss.utils.Logger;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiFunction;
 
 public class BytecodeAnalyzer {
     private final Path workDir;
     private final boolean skipAnnotationCheck;
+    private final double maxSlowdown;
+    private final boolean keepJniBound;
+    private final BiFunction<InstructionInfo, String, MethodBodyInfo> inliner;
 
     public BytecodeAnalyzer(Path workDir, boolean skipAnnotationCheck) {
+        this(workDir, skipAnnotationCheck, JniCostModel.DEFAULT_MAX_SLOWDOWN, false);
+    }
+
+    public BytecodeAnalyzer(Path workDir, boolean skipAnnotationCheck, double maxSlowdown, boolean keepJniBound) {
+        this(workDir, skipAnnotationCheck, maxSlowdown, keepJniBound, (insn, caller) -> null);
+    }
+
+    public BytecodeAnalyzer(Path workDir, boolean skipAnnotationCheck, double maxSlowdown, boolean keepJniBound,
+                            BiFunction<InstructionInfo, String, MethodBodyInfo> inliner) {
         this.workDir = workDir;
         this.skipAnnotationCheck = skipAnnotationCheck;
+        this.maxSlowdown = maxSlowdown;
+        this.keepJniBound = keepJniBound;
+        this.inliner = inliner;
     }
 
     public List<NativeMethodInfo> findNativeMethods(List<String> classFiles) {
+        return applyCostModel(collectMethods(classFiles));
+    }
+
+    public List<NativeMethodInfo> collectMethods(List<String> classFiles) {
         List<NativeMethodInfo> nativeMethods = new ArrayList<>();
 
         for (String classFile : classFiles) {
@@ -39,4 +60,42 @@ public class BytecodeAnalyzer {
         Logger.detail("Found " + nativeMethods.size() + " " + mode);
         return nativeMethods;
     }
+
+    public List<NativeMethodInfo> applyCostModel(List<NativeMethodInfo> methods) {
+        ClassIndex classIndex = new ClassIndex(workDir);
+        JniCostModel costModel = new JniCostModel(classIndex, methods, inliner);
+        List<NativeMethodInfo> kept = new ArrayList<>();
+        int codeLines = 0;
+
+        for (NativeMethodInfo method : methods) {
+            MethodNode node = classIndex.findMethod(method.getClassName(), method.getMethodName(),
+                    method.getDescriptor());
+            if (node == null || node.instructions.size() == 0) {
+                kept.add(method);
+                continue;
+            }
+
+            JniCostModel.Estimate estimate = costModel.estimate(node, method.getClassName());
+            boolean jniBound = estimate.slowdown() > maxSlowdown;
+            boolean exclude = jniBound && skipAnnotationCheck && !keepJniBound;
+            String name = method.getSimpleName() + method.getDescriptor();
+
+            Logger.detail(String.format("  %-48s %s  %s", name, estimate.summary(),
+                    exclude ? "excluded" : jniBound ? "kept, JNI-bound" : "ok"));
+            estimate.logLoops();
+
+            if (exclude) {
+                continue;
+            }
+            if (jniBound) {
+                estimate.warnJniBound(name);
+            }
+            kept.add(method);
+            codeLines += estimate.codeLines;
+        }
+
+        Logger.detail("Cost model: kept " + kept.size() + " of " + methods.size() + " methods (max slowdown "
+                + maxSlowdown + "x), ~" + codeLines + " lines of C++");
+        return kept;
+    }
 }
\ No newline at end of file
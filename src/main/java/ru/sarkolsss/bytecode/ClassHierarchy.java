@@ -0,0 +1,161 @@
+package ru.sarkolsss.bytecode;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import ru.sarkolsss.utils.Logger;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+public class ClassHierarchy {
+    private static final String OBJECT = "java/lang/Object";
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Set<String> missing = new HashSet<>();
+
+    public static ClassHierarchy build(Path classesDir, List<String> classFiles, List<Path> libraryJars) {
+        ClassHierarchy hierarchy = new ClassHierarchy();
+
+        for (String classFile : classFiles) {
+            try {
+                hierarchy.add(Files.readAllBytes(classesDir.resolve(classFile)));
+            } catch (IOException e) {
+                Logger.error("Failed to index class: " + classFile);
+            }
+        }
+
+        for (Path libraryJar : libraryJars) {
+            hierarchy.addJar(libraryJar);
+        }
+
+        Logger.detail("Indexed " + hierarchy.entries.size() + " classes for frame computation");
+        return hierarchy;
+    }
+
+    public void addJar(Path jarPath) {
+        try (JarFile jar = new JarFile(jarPath.toFile())) {
+            for (JarEntry entry : Collections.list(jar.entries())) {
+                if (entry.getName().endsWith(".class")) {
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        add(in.readAllBytes());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Logger.error("Failed to index library JAR: " + jarPath);
+        }
+    }
+
+    public void add(byte[] bytecode) {
+        ClassReader reader = new ClassReader(bytecode);
+        entries.putIfAbsent(reader.getClassName(), new Entry(
+                reader.getSuperName(),
+                reader.getInterfaces(),
+                (reader.getAccess() & Opcodes.ACC_INTERFACE) != 0
+        ));
+    }
+
+    public boolean contains(String className) {
+        return lookup(className) != null;
+    }
+
+    public String getSuperName(String className) {
+        Entry entry = lookup(className);
+        return entry != null ? entry.superName : null;
+    }
+
+    public boolean isInterface(String className) {
+        Entry entry = lookup(className);
+        return entry != null && entry.isInterface;
+    }
+
+    public boolean isAssignableFrom(String target, String type) {
+        if (target.equals(type) || target.equals(OBJECT)) {
+            return true;
+        }
+
+        List<String> pending = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        pending.add(type);
+
+        while (!pending.isEmpty()) {
+            String current = pending.remove(pending.size() - 1);
+            if (current.equals(target)) {
+                return true;
+            }
+            if (!visited.add(current)) {
+                continue;
+            }
+
+            Entry entry = lookup(current);
+            if (entry == null) {
+                continue;
+            }
+            if (entry.superName != null) {
+                pending.add(entry.superName);
+            }
+            Collections.addAll(pending, entry.interfaces);
+        }
+
+        return false;
+    }
+
+    public String getCommonSuperClass(String type1, String type2) {
+        if (isAssignableFrom(type1, type2)) {
+            return type1;
+        }
+        if (isAssignableFrom(type2, type1)) {
+            return type2;
+        }
+        if (isInterface(type1) || isInterface(type2)) {
+            return OBJECT;
+        }
+
+        String current = type1;
+        while (current != null && !isAssignableFrom(current, type2)) {
+            current = getSuperName(current);
+        }
+        return current != null ? current : OBJECT;
+    }
+
+    private Entry lookup(String className) {
+        Entry entry = entries.get(className);
+        if (entry != null || missing.contains(className)) {
+            return entry;
+        }
+
+        try (InputStream in = ClassLoader.getSystemResourceAsStream(className + ".class")) {
+            if (in != null) {
+                add(in.readAllBytes());
+                return entries.get(className);
+            }
+        } catch (IOException ignored) {
+        }
+
+        missing.add(className);
+        Logger.warning("Class not found in hierarchy index: " + className);
+        return null;
+    }
+
+    private static class Entry {
+        final String superName;
+        final String[] interfaces;
+        final boolean isInterface;
+
+        Entry(String superName, String[] interfaces, boolean isInterface) {
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.isInterface = isInterface;
+        }
+    }
+}
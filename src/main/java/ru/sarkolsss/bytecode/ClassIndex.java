@@ -0,0 +1,85 @@
+package ru.sarkolsss.bytecode;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ClassIndex {
+    private final Path classesDir;
+    private final Map<String, ClassNode> cache = new HashMap<>();
+
+    public ClassIndex(Path classesDir) {
+        this.classesDir = classesDir;
+    }
+
+    public ClassNode getClass(String className) {
+        if (cache.containsKey(className)) {
+            return cache.get(className);
+        }
+
+        ClassNode node = null;
+        try {
+            byte[] bytecode = readClass(className);
+            if (bytecode != null) {
+                node = new ClassNode();
+                new ClassReader(bytecode).accept(node, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            }
+        } catch (IOException ignored) {
+            node = null;
+        }
+
+        cache.put(className, node);
+        return node;
+    }
+
+    public boolean isInput(String className) {
+        return Files.exists(classesDir.resolve(className + ".class"));
+    }
+
+    public FieldNode findField(String owner, String name, String descriptor) {
+        for (String current = owner; current != null; ) {
+            ClassNode node = getClass(current);
+            if (node == null) {
+                return null;
+            }
+            for (FieldNode field : node.fields) {
+                if (field.name.equals(name) && field.desc.equals(descriptor)) {
+                    return field;
+                }
+            }
+            current = node.superName;
+        }
+        return null;
+    }
+
+    public MethodNode findMethod(String owner, String name, String descriptor) {
+        ClassNode node = getClass(owner);
+        if (node == null) {
+            return null;
+        }
+        for (MethodNode method : node.methods) {
+            if (method.name.equals(name) && method.desc.equals(descriptor)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private byte[] readClass(String className) throws IOException {
+        Path classPath = classesDir.resolve(className + ".class");
+        if (Files.exists(classPath)) {
+            return Files.readAllBytes(classPath);
+        }
+
+        try (InputStream in = ClassLoader.getSystemResourceAsStream(className + ".class")) {
+            return in != null ? in.readAllBytes() : null;
+        }
+    }
+}
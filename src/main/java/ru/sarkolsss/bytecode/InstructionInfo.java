@@ -17,4 +17,6 @@ public class InstructionInfo {
     public Label label;
     public Label switchDefault;
     public List<Label> switchLabels;
+    public List<Integer> switchKeys;
+    public String stackTypes;
 }
\ No newline at end of file
@@ -0,0 +1,193 @@
+package ru.sarkolsss.bytecode;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import ru.sarkolsss.utils.Logger;
+import java.util.*;
+import java.util.function.BiFunction;
+
+public class JniCostModel {
+    public static final double DEFAULT_MAX_SLOWDOWN = 1.0;
+    private static final int LOOP_WEIGHT = 10;
+    private static final int MAX_LOOP_DEPTH = 3;
+    private static final int LINES_PER_CROSSING = 4;
+    private static final double PRIMITIVE_COST = 0.5;
+    private static final double LINKED_CALL_COST = 2;
+
+    private final ClassIndex classIndex;
+    private final Map<String, Integer> compiled = new HashMap<>();
+    private final BiFunction<InstructionInfo, String, MethodBodyInfo> inliner;
+
+    public JniCostModel(ClassIndex classIndex, Collection<NativeMethodInfo> methods,
+                        BiFunction<InstructionInfo, String, MethodBodyInfo> inliner) {
+        this.classIndex = classIndex;
+        this.inliner = inliner;
+        for (NativeMethodInfo method : methods) {
+            compiled.put(key(method.getClassName(), method.getMethodName(), method.getDescriptor()), method.getAccess());
+        }
+    }
+
+    public Estimate estimate(MethodNode method, String owner) {
+        String self = key(owner, method.name, method.desc);
+        Estimate estimate = new Estimate();
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, owner);
+        List<LoopInfo> loops = LoopAnalyzer.findLoops(body);
+
+        for (LoopInfo loop : loops) {
+            LoopEstimate loopEstimate = new LoopEstimate();
+            loopEstimate.header = loop.header;
+            loopEstimate.depth = 1;
+            for (LoopInfo other : loops) {
+                if (other.contains(loop)) {
+                    loopEstimate.depth++;
+                }
+            }
+            estimate.loops.add(loopEstimate);
+        }
+
+        List<InstructionInfo> insns = body.instructions;
+        for (int i = 0; i < insns.size(); i++) {
+            InstructionInfo insn = insns.get(i);
+            if (insn.opcode < 0) {
+                continue;
+            }
+
+            double cost = nativeCost(insn, owner, self);
+            boolean crossing = cost > LINKED_CALL_COST;
+            int depth = 0;
+            for (int l = 0; l < loops.size(); l++) {
+                if (loops.get(l).contains(i)) {
+                    depth++;
+                    LoopEstimate loop = estimate.loops.get(l);
+                    loop.instructions++;
+                    loop.nativeCost += cost;
+                    if (crossing) {
+                        loop.crossings++;
+                    }
+                }
+            }
+
+            int weight = (int) Math.pow(LOOP_WEIGHT, Math.min(depth, MAX_LOOP_DEPTH));
+            estimate.jvmCost += weight;
+            estimate.nativeCost += weight * cost;
+            if (crossing) {
+                estimate.crossingCost += weight * cost;
+                estimate.crossings++;
+                estimate.codeLines += LINES_PER_CROSSING;
+            } else {
+                estimate.codeLines++;
+            }
+        }
+        return estimate;
+    }
+
+    private double nativeCost(InstructionInfo insn, String owner, String self) {
+        switch (insn.opcode) {
+            case Opcodes.INVOKEVIRTUAL: case Opcodes.INVOKESPECIAL: case Opcodes.INVOKESTATIC:
+                MethodBodyInfo inlined = insn.owner != null ? inliner.apply(insn, owner) : null;
+                if (inlined != null) {
+                    double cost = 0;
+                    for (InstructionInfo callee : inlined.instructions) {
+                        if (callee.opcode >= 0) {
+                            cost += nativeCost(callee, insn.owner, self);
+                        }
+                    }
+                    return cost;
+                }
+                return isLinked(insn, owner, self) ? LINKED_CALL_COST : 40;
+            case Opcodes.INVOKEINTERFACE: case Opcodes.INVOKEDYNAMIC:
+                return 40;
+            case Opcodes.NEW:
+                return 60;
+            case Opcodes.ANEWARRAY: case Opcodes.NEWARRAY: case Opcodes.MULTIANEWARRAY:
+            case Opcodes.MONITORENTER: case Opcodes.MONITOREXIT: case Opcodes.ATHROW:
+                return 30;
+            case Opcodes.GETFIELD: case Opcodes.PUTFIELD: case Opcodes.GETSTATIC: case Opcodes.PUTSTATIC:
+            case Opcodes.AALOAD: case Opcodes.AASTORE:
+                return 15;
+            case Opcodes.CHECKCAST: case Opcodes.INSTANCEOF:
+                return 10;
+            case Opcodes.IALOAD: case Opcodes.LALOAD: case Opcodes.FALOAD: case Opcodes.DALOAD:
+            case Opcodes.BALOAD: case Opcodes.CALOAD: case Opcodes.SALOAD:
+            case Opcodes.IASTORE: case Opcodes.LASTORE: case Opcodes.FASTORE: case Opcodes.DASTORE:
+            case Opcodes.BASTORE: case Opcodes.CASTORE: case Opcodes.SASTORE:
+            case Opcodes.ARRAYLENGTH:
+                return 3;
+            default:
+                return PRIMITIVE_COST;
+        }
+    }
+
+    private boolean isLinked(InstructionInfo insn, String owner, String self) {
+        String target = key(insn.owner, insn.name, insn.descriptor);
+        Integer access = compiled.get(target);
+        if (access == null || target.equals(self) || (access & Opcodes.ACC_SYNCHRONIZED) != 0) {
+            return false;
+        }
+
+        boolean isStatic = (access & Opcodes.ACC_STATIC) != 0;
+        return switch (insn.opcode) {
+            case Opcodes.INVOKESTATIC -> isStatic && insn.owner.equals(owner);
+            case Opcodes.INVOKESPECIAL -> !isStatic;
+            case Opcodes.INVOKEVIRTUAL -> !isStatic
+                    && ((access & (Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL)) != 0 || isFinalClass(insn.owner));
+            default -> false;
+        };
+    }
+
+    private boolean isFinalClass(String className) {
+        ClassNode node = classIndex.getClass(className);
+        return node != null && (node.access & Opcodes.ACC_FINAL) != 0;
+    }
+
+    private static String key(String owner, String name, String descriptor) {
+        return owner + "." + name + descriptor;
+    }
+
+    public static class Estimate {
+        public long jvmCost;
+        public double nativeCost;
+        public double crossingCost;
+        public int crossings;
+        public int codeLines;
+        public List<LoopEstimate> loops = new ArrayList<>();
+
+        public double slowdown() {
+            return jvmCost > 0 ? nativeCost / jvmCost : 1;
+        }
+
+        public double overhead() {
+            return nativeCost > 0 ? crossingCost / nativeCost : 0;
+        }
+
+        public String summary() {
+            return String.format(Locale.ROOT, "%6.1fx  %3.0f%% JNI overhead  %4d crossings  ~%d lines",
+                    slowdown(), overhead() * 100, crossings, codeLines);
+        }
+
+        public void logLoops() {
+            for (LoopEstimate loop : loops) {
+                Logger.detail(String.format(Locale.ROOT, "      loop at %d (depth %d): %d of %d instructions cross JNI, %.1fx per iteration",
+                        loop.header, loop.depth, loop.crossings, loop.instructions, loop.slowdown()));
+            }
+        }
+
+        public void warnJniBound(String name) {
+            Logger.warning(name + " is estimated " + String.format(Locale.ROOT, "%.1f", slowdown())
+                    + "x slower as native code (" + crossings + " JNI crossings)");
+        }
+    }
+
+    public static class LoopEstimate {
+        public int header;
+        public int depth;
+        public int instructions;
+        public int crossings;
+        public double nativeCost;
+
+        public double slowdown() {
+            return instructions > 0 ? nativeCost / instructions : 1;
+        }
+    }
+}
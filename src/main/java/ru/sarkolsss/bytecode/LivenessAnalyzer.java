@@ -0,0 +1,89 @@
+package ru.sarkolsss.bytecode;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import java.util.*;
+
+public class LivenessAnalyzer {
+
+    public static List<BitSet> referenceLiveIn(MethodBodyInfo body) {
+        return solve(body.instructions, successors(body, false), true);
+    }
+
+    public static List<BitSet> primitiveLiveIn(MethodBodyInfo body) {
+        return solve(body.instructions, successors(body, true), false);
+    }
+
+    private static List<List<Integer>> successors(MethodBodyInfo body, boolean handlers) {
+        List<InstructionInfo> insns = body.instructions;
+        Map<Label, Integer> labelIndex = LoopAnalyzer.labelIndex(insns);
+        int count = insns.size();
+
+        List<List<Integer>> successors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            List<Integer> next = new ArrayList<>();
+            if (i + 1 < count && !LoopAnalyzer.endsBlock(insns.get(i).opcode)) {
+                next.add(i + 1);
+            }
+            for (Label target : LoopAnalyzer.targets(insns.get(i))) {
+                Integer index = labelIndex.get(target);
+                if (index != null) {
+                    next.add(index);
+                }
+            }
+            successors.add(next);
+        }
+
+        if (handlers) {
+            for (TryCatchInfo block : body.tryCatchBlocks) {
+                Integer start = labelIndex.get(block.start);
+                Integer end = labelIndex.get(block.end);
+                Integer handler = labelIndex.get(block.handler);
+                if (start == null || end == null || handler == null) {
+                    continue;
+                }
+                for (int i = start; i < end; i++) {
+                    successors.get(i).add(handler);
+                }
+            }
+        }
+        return successors;
+    }
+
+    private static List<BitSet> solve(List<InstructionInfo> insns, List<List<Integer>> successors,
+                                      boolean references) {
+        int count = insns.size();
+        List<BitSet> liveIn = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            liveIn.add(new BitSet());
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = count - 1; i >= 0; i--) {
+                BitSet live = new BitSet();
+                for (int next : successors.get(i)) {
+                    live.or(liveIn.get(next));
+                }
+
+                InstructionInfo insn = insns.get(i);
+                if (references ? insn.opcode == Opcodes.ASTORE
+                        : insn.opcode >= Opcodes.ISTORE && insn.opcode <= Opcodes.DSTORE) {
+                    live.clear(insn.var);
+                } else if (references ? insn.opcode == Opcodes.ALOAD
+                        : (insn.opcode >= Opcodes.ILOAD && insn.opcode <= Opcodes.DLOAD)
+                        || insn.opcode == Opcodes.IINC) {
+                    live.set(insn.var);
+                }
+
+                if (!live.equals(liveIn.get(i))) {
+                    liveIn.set(i, live);
+                    changed = true;
+                }
+            }
+        }
+
+        return liveIn;
+    }
+}
@@ -0,0 +1,102 @@
+package ru.sarkolsss.bytecode;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import java.util.*;
+
+public class LoopAnalyzer {
+
+    public static List<LoopInfo> findLoops(MethodBodyInfo body) {
+        List<InstructionInfo> insns = body.instructions;
+        Map<Label, Integer> labelIndex = labelIndex(insns);
+
+        Map<Integer, LoopInfo> byHeader = new TreeMap<>();
+        for (int i = 0; i < insns.size(); i++) {
+            for (Label target : targets(insns.get(i))) {
+                Integer t = labelIndex.get(target);
+                if (t != null && t <= i) {
+                    LoopInfo loop = byHeader.computeIfAbsent(t, k -> new LoopInfo());
+                    loop.header = t;
+                    loop.end = Math.max(loop.end, i);
+                }
+            }
+        }
+
+        List<LoopInfo> loops = new ArrayList<>(byHeader.values());
+        for (LoopInfo loop : loops) {
+            for (int i = loop.header; i <= loop.end; i++) {
+                InstructionInfo insn = insns.get(i);
+                if (isStore(insn.opcode) || insn.opcode == Opcodes.IINC) {
+                    loop.storedVars.add(insn.var);
+                }
+                if ("METHOD_INSN".equals(insn.type)) {
+                    loop.hasCalls = true;
+                }
+            }
+            loop.preheader = findPreheader(loop, insns, labelIndex);
+        }
+
+        return loops;
+    }
+
+    private static int findPreheader(LoopInfo loop, List<InstructionInfo> insns,
+                                     Map<Label, Integer> labelIndex) {
+        List<Integer> entries = new ArrayList<>();
+
+        for (int i = 0; i < insns.size(); i++) {
+            if (loop.contains(i)) {
+                continue;
+            }
+            for (Label target : targets(insns.get(i))) {
+                Integer t = labelIndex.get(target);
+                if (t != null && loop.contains(t)) {
+                    entries.add(i);
+                    break;
+                }
+            }
+        }
+
+        boolean fallsThrough = loop.header > 0 && !endsBlock(insns.get(loop.header - 1).opcode);
+        if (fallsThrough) {
+            return entries.isEmpty() ? loop.header : -1;
+        }
+        if (entries.size() == 1 && insns.get(entries.get(0)).opcode == Opcodes.GOTO) {
+            return entries.get(0);
+        }
+        return -1;
+    }
+
+    public static Map<Label, Integer> labelIndex(List<InstructionInfo> insns) {
+        Map<Label, Integer> labelIndex = new IdentityHashMap<>();
+        for (int i = 0; i < insns.size(); i++) {
+            if (insns.get(i).label != null && "LABEL".equals(insns.get(i).type)) {
+                labelIndex.put(insns.get(i).label, i);
+            }
+        }
+        return labelIndex;
+    }
+
+    public static List<Label> targets(InstructionInfo insn) {
+        List<Label> result = new ArrayList<>();
+        if ("JUMP_INSN".equals(insn.type) && insn.label != null) {
+            result.add(insn.label);
+        }
+        if (insn.switchDefault != null) {
+            result.add(insn.switchDefault);
+        }
+        if (insn.switchLabels != null) {
+            result.addAll(insn.switchLabels);
+        }
+        return result;
+    }
+
+    public static boolean isStore(int opcode) {
+        return opcode >= Opcodes.ISTORE && opcode <= Opcodes.ASTORE;
+    }
+
+    public static boolean endsBlock(int opcode) {
+        return opcode == Opcodes.GOTO || opcode == Opcodes.ATHROW
+                || opcode == Opcodes.TABLESWITCH || opcode == Opcodes.LOOKUPSWITCH
+                || (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN);
+    }
+}
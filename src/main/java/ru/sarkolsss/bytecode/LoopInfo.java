@@ -0,0 +1,20 @@
+package ru.sarkolsss.bytecode;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class LoopInfo {
+    public int header;
+    public int end;
+    public int preheader = -1;
+    public Set<Integer> storedVars = new HashSet<>();
+    public boolean hasCalls;
+
+    public boolean contains(int index) {
+        return index >= header && index <= end;
+    }
+
+    public boolean contains(LoopInfo other) {
+        return other != this && header <= other.header && other.end <= end;
+    }
+}
@@ -2,6 +2,13 @@ package ru.sarkolsss.bytecode;
 
 import org.objectweb.asm.tree.*;
 import org.objectweb.asm.*;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.Frame;
+import ru.sarkolsss.utils.FileUtils;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class MethodBodyAnalyzer {
@@ -11,22 +18,110 @@ public class MethodBodyAnalyzer {
         info.className = className;
         info.methodName = method.name;
         info.descriptor = method.desc;
+        info.access = method.access;
         info.instructions = new ArrayList<>();
 
         if (method.instructions == null || method.instructions.size() == 0) {
             return info;
         }
 
+        info.fingerprint = fingerprint(method);
+        info.pure = isPurePrimitive(method);
+        Frame<BasicValue>[] frames = analyzeFrames(method, className);
+
         for (AbstractInsnNode insn : method.instructions) {
             InstructionInfo insnInfo = analyzeInstruction(insn);
             if (insnInfo != null) {
+                if (frames != null) {
+                    insnInfo.stackTypes = stackTypes(frames[method.instructions.indexOf(insn)]);
+                }
                 info.instructions.add(insnInfo);
             }
         }
 
+        if (method.tryCatchBlocks != null) {
+            for (TryCatchBlockNode block : method.tryCatchBlocks) {
+                TryCatchInfo tryCatch = new TryCatchInfo();
+                tryCatch.start = block.start.getLabel();
+                tryCatch.end = block.end.getLabel();
+                tryCatch.handler = block.handler.getLabel();
+                tryCatch.type = block.type;
+                info.tryCatchBlocks.add(tryCatch);
+            }
+        }
+
         return info;
     }
 
+    private static boolean isPurePrimitive(MethodNode method) {
+        for (Type type : Type.getArgumentTypes(method.desc)) {
+            if (type.getSort() == Type.OBJECT || type.getSort() == Type.ARRAY) {
+                return false;
+            }
+        }
+        int returnSort = Type.getReturnType(method.desc).getSort();
+        if (returnSort == Type.OBJECT || returnSort == Type.ARRAY
+                || (method.tryCatchBlocks != null && !method.tryCatchBlocks.isEmpty())) {
+            return false;
+        }
+
+        for (AbstractInsnNode insn : method.instructions) {
+            if (!isPureInstruction(insn)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPureInstruction(AbstractInsnNode insn) {
+        int op = insn.getOpcode();
+        if (op == -1) {
+            return true;
+        }
+        if (op == Opcodes.LDC) {
+            return ((LdcInsnNode) insn).cst instanceof Number;
+        }
+        if (op == Opcodes.IDIV || op == Opcodes.LDIV || op == Opcodes.IREM || op == Opcodes.LREM) {
+            return false;
+        }
+        return (op >= Opcodes.NOP && op <= Opcodes.SIPUSH && op != Opcodes.ACONST_NULL)
+                || (op >= Opcodes.ILOAD && op <= Opcodes.DLOAD)
+                || (op >= Opcodes.ISTORE && op <= Opcodes.DSTORE)
+                || (op >= Opcodes.POP && op <= Opcodes.DCMPG)
+                || (op >= Opcodes.IFEQ && op <= Opcodes.IF_ICMPLE)
+                || op == Opcodes.GOTO
+                || op == Opcodes.TABLESWITCH || op == Opcodes.LOOKUPSWITCH
+                || (op >= Opcodes.IRETURN && op <= Opcodes.DRETURN)
+                || op == Opcodes.RETURN;
+    }
+
+    private static Frame<BasicValue>[] analyzeFrames(MethodNode method, String className) {
+        try {
+            return new Analyzer<>(new BasicInterpreter()).analyze(className, method);
+        } catch (AnalyzerException e) {
+            return null;
+        }
+    }
+
+    private static String stackTypes(Frame<BasicValue> frame) {
+        if (frame == null) {
+            return null;
+        }
+
+        StringBuilder types = new StringBuilder();
+        for (int i = 0; i < frame.getStackSize(); i++) {
+            Type type = frame.getStack(i).getType();
+            if (type == null) {
+                types.append('U');
+            } else if (type.getSort() == Type.OBJECT || type.getSort() == Type.ARRAY) {
+                types.append('A');
+            } else {
+                types.append(type.getDescriptor());
+            }
+        }
+        return types.toString();
+    }
+
     private static InstructionInfo analyzeInstruction(AbstractInsnNode insn) {
         InstructionInfo info = new InstructionInfo();
         info.opcode = insn.getOpcode();
@@ -85,7 +180,9 @@ public class MethodBodyAnalyzer {
                 TableSwitchInsnNode tsinsn = (TableSwitchInsnNode) insn;
                 info.switchDefault = tsinsn.dflt.getLabel();
                 info.switchLabels = new ArrayList<>();
+                info.switchKeys = new ArrayList<>();
                 for (LabelNode ln : tsinsn.labels) {
+                    info.switchKeys.add(tsinsn.min + info.switchLabels.size());
                     info.switchLabels.add(ln.getLabel());
                 }
             }
@@ -97,6 +194,7 @@ public class MethodBodyAnalyzer {
                 for (LabelNode ln : lsinsn.labels) {
                     info.switchLabels.add(ln.getLabel());
                 }
+                info.switchKeys = new ArrayList<>(lsinsn.keys);
             }
             case AbstractInsnNode.LINE -> {
                 return null;
@@ -111,4 +209,86 @@ public class MethodBodyAnalyzer {
 
         return info;
     }
+
+    public static String fingerprint(MethodNode method) {
+        StringBuilder sb = new StringBuilder();
+        sb.append((method.access & Opcodes.ACC_STATIC) != 0 ? "static " : "virtual ");
+        sb.append(method.desc).append('\n');
+
+        Map<LabelNode, Integer> labelIds = new HashMap<>();
+        for (AbstractInsnNode insn : method.instructions) {
+            if (insn instanceof LabelNode) {
+                labelIds.put((LabelNode) insn, labelIds.size());
+            }
+        }
+
+        for (AbstractInsnNode insn : method.instructions) {
+            switch (insn.getType()) {
+                case AbstractInsnNode.LINE, AbstractInsnNode.FRAME -> {
+                    continue;
+                }
+                case AbstractInsnNode.LABEL -> sb.append('L').append(labelIds.get(insn));
+                case AbstractInsnNode.INT_INSN -> sb.append(insn.getOpcode())
+                        .append(' ').append(((IntInsnNode) insn).operand);
+                case AbstractInsnNode.VAR_INSN -> sb.append(insn.getOpcode())
+                        .append(' ').append(((VarInsnNode) insn).var);
+                case AbstractInsnNode.TYPE_INSN -> sb.append(insn.getOpcode())
+                        .append(' ').append(((TypeInsnNode) insn).desc);
+                case AbstractInsnNode.FIELD_INSN -> {
+                    FieldInsnNode f = (FieldInsnNode) insn;
+                    sb.append(insn.getOpcode()).append(' ').append(f.owner).append('.')
+                            .append(f.name).append(' ').append(f.desc);
+                }
+                case AbstractInsnNode.METHOD_INSN -> {
+                    MethodInsnNode m = (MethodInsnNode) insn;
+                    sb.append(insn.getOpcode()).append(' ').append(m.owner).append('.')
+                            .append(m.name).append(m.desc);
+                }
+                case AbstractInsnNode.INVOKE_DYNAMIC_INSN -> {
+                    InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+                    sb.append(insn.getOpcode()).append(' ').append(indy.name).append(indy.desc)
+                            .append(' ').append(indy.bsm).append(' ')
+                            .append(Arrays.toString(indy.bsmArgs));
+                }
+                case AbstractInsnNode.LDC_INSN -> {
+                    Object cst = ((LdcInsnNode) insn).cst;
+                    sb.append(insn.getOpcode()).append(' ').append(cst.getClass().getSimpleName())
+                            .append(':').append(cst);
+                }
+                case AbstractInsnNode.IINC_INSN -> sb.append(insn.getOpcode())
+                        .append(' ').append(((IincInsnNode) insn).var)
+                        .append(' ').append(((IincInsnNode) insn).incr);
+                case AbstractInsnNode.JUMP_INSN -> sb.append(insn.getOpcode())
+                        .append(" L").append(labelIds.get(((JumpInsnNode) insn).label));
+                case AbstractInsnNode.TABLESWITCH_INSN -> {
+                    TableSwitchInsnNode ts = (TableSwitchInsnNode) insn;
+                    sb.append(insn.getOpcode()).append(' ').append(ts.min).append(' ').append(ts.max)
+                            .append(" L").append(labelIds.get(ts.dflt));
+                    for (LabelNode ln : ts.labels) {
+                        sb.append(" L").append(labelIds.get(ln));
+                    }
+                }
+                case AbstractInsnNode.LOOKUPSWITCH_INSN -> {
+                    LookupSwitchInsnNode ls = (LookupSwitchInsnNode) insn;
+                    sb.append(insn.getOpcode()).append(' ').append(ls.keys)
+                            .append(" L").append(labelIds.get(ls.dflt));
+                    for (LabelNode ln : ls.labels) {
+                        sb.append(" L").append(labelIds.get(ln));
+                    }
+                }
+                case AbstractInsnNode.MULTIANEWARRAY_INSN -> sb.append(insn.getOpcode())
+                        .append(' ').append(((MultiANewArrayInsnNode) insn).desc)
+                        .append(' ').append(((MultiANewArrayInsnNode) insn).dims);
+                default -> sb.append(insn.getOpcode());
+            }
+            sb.append('\n');
+        }
+
+        for (TryCatchBlockNode tcb : method.tryCatchBlocks) {
+            sb.append("try L").append(labelIds.get(tcb.start)).append(" L").append(labelIds.get(tcb.end))
+                    .append(" L").append(labelIds.get(tcb.handler)).append(' ').append(tcb.type).append('\n');
+        }
+
+        return FileUtils.sha256(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
 }
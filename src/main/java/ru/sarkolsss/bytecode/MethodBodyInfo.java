@@ -1,10 +1,15 @@
 package ru.sarkolsss.bytecode;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class MethodBodyInfo {
     public String className;
     public String methodName;
     public String descriptor;
+    public int access;
     public List<InstructionInfo> instructions;
+    public String fingerprint;
+    public boolean pure;
+    public List<TryCatchInfo> tryCatchBlocks = new ArrayList<>();
 }
@@ -0,0 +1,501 @@
+package ru.sarkolsss.bytecode;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import java.util.*;
+
+public class MethodOptimizer {
+
+    public static int optimize(MethodBodyInfo body) {
+        if (body == null || body.instructions.isEmpty()) {
+            return 0;
+        }
+
+        int before = body.instructions.size();
+        boolean changed = true;
+        while (changed) {
+            changed = foldConstants(body);
+            changed |= propagateLocals(body);
+            changed |= removeDeadStores(body);
+            changed |= removeUnreachable(body);
+        }
+        return before - body.instructions.size();
+    }
+
+    private static boolean foldConstants(MethodBodyInfo body) {
+        List<InstructionInfo> insns = body.instructions;
+        Set<Label> targeted = targetedLabels(body);
+        boolean changed = false;
+
+        for (int i = 0; i < insns.size(); i++) {
+            InstructionInfo insn = insns.get(i);
+            if (insn == null || insn.opcode == -1) {
+                continue;
+            }
+
+            int first = previous(insns, i, targeted);
+            Object a = first >= 0 ? constantOf(insns.get(first)) : null;
+            if (a == null) {
+                if (isDiscard(insn.opcode) && first >= 0 && isLoad(insns.get(first).opcode)
+                        && size(insns.get(first).opcode) == (insn.opcode == Opcodes.POP2 ? 2 : 1)) {
+                    insns.set(first, null);
+                    insns.set(i, null);
+                    changed = true;
+                }
+                continue;
+            }
+
+            if (isDiscard(insn.opcode) && sizeOf(a) == (insn.opcode == Opcodes.POP2 ? 2 : 1)) {
+                insns.set(first, null);
+                insns.set(i, null);
+                changed = true;
+                continue;
+            }
+
+            Object unary = foldUnary(insn.opcode, a);
+            if (unary != null) {
+                insns.set(first, constant(unary, insns.get(first).stackTypes));
+                insns.set(i, null);
+                changed = true;
+                continue;
+            }
+
+            if (insn.opcode >= Opcodes.IFEQ && insn.opcode <= Opcodes.IFLE && a instanceof Integer) {
+                replaceBranch(insns, first, i, compare(insn.opcode - Opcodes.IFEQ, (Integer) a, 0));
+                changed = true;
+                continue;
+            }
+
+            int second = first;
+            first = previous(insns, first, targeted);
+            Object left = first >= 0 ? constantOf(insns.get(first)) : null;
+            if (left == null) {
+                continue;
+            }
+
+            if (insn.opcode >= Opcodes.IF_ICMPEQ && insn.opcode <= Opcodes.IF_ICMPLE
+                    && left instanceof Integer && a instanceof Integer) {
+                insns.set(second, null);
+                replaceBranch(insns, first, i,
+                        compare(insn.opcode - Opcodes.IF_ICMPEQ, (Integer) left, (Integer) a));
+                changed = true;
+                continue;
+            }
+
+            Object binary = foldBinary(insn.opcode, left, a);
+            if (binary != null) {
+                insns.set(first, constant(binary, insns.get(first).stackTypes));
+                insns.set(second, null);
+                insns.set(i, null);
+                changed = true;
+            }
+        }
+
+        for (int i = 0; i < insns.size(); i++) {
+            InstructionInfo insn = insns.get(i);
+            if (insn != null && insn.opcode == Opcodes.GOTO && jumpsToNext(insns, i, insn.label)) {
+                insns.set(i, null);
+                changed = true;
+            }
+        }
+
+        insns.removeIf(Objects::isNull);
+        return changed;
+    }
+
+    private static boolean propagateLocals(MethodBodyInfo body) {
+        List<InstructionInfo> insns = body.instructions;
+        Set<Label> targeted = targetedLabels(body);
+        Map<Integer, List<Integer>> stores = new HashMap<>();
+        Set<Integer> incremented = new HashSet<>();
+        for (int i = 0; i < insns.size(); i++) {
+            InstructionInfo insn = insns.get(i);
+            if (LoopAnalyzer.isStore(insn.opcode)) {
+                stores.computeIfAbsent(insn.var, k -> new ArrayList<>()).add(i);
+            } else if (insn.opcode == Opcodes.IINC) {
+                incremented.add(insn.var);
+            }
+        }
+
+        int params = parameterSlots(body);
+        boolean changed = false;
+        for (Map.Entry<Integer, List<Integer>> entry : stores.entrySet()) {
+            int var = entry.getKey();
+            List<Integer> sites = entry.getValue();
+            if (var < params || incremented.contains(var)) {
+                continue;
+            }
+
+            Object value = null;
+            InstructionInfo copied = null;
+            boolean propagate = true;
+            for (int site : sites) {
+                int source = previous(insns, site, targeted);
+                InstructionInfo from = source >= 0 ? insns.get(source) : null;
+                Object constant = from != null ? constantOf(from) : null;
+                if (constant != null && (value == null || value.equals(constant))) {
+                    value = constant;
+                } else if (sites.size() == 1 && from != null && isLoad(from.opcode)
+                        && from.opcode - Opcodes.ILOAD == insns.get(site).opcode - Opcodes.ISTORE
+                        && from.var < params && from.var != var
+                        && !stores.containsKey(from.var) && !incremented.contains(from.var)) {
+                    copied = from;
+                } else {
+                    propagate = false;
+                    break;
+                }
+            }
+            if (!propagate) {
+                continue;
+            }
+
+            for (int i = 0; i < insns.size(); i++) {
+                InstructionInfo insn = insns.get(i);
+                if (insn != null && isLoad(insn.opcode) && insn.var == var) {
+                    insns.set(i, value != null ? constant(value, insn.stackTypes) : load(copied, insn.stackTypes));
+                }
+            }
+            for (int site : sites) {
+                insns.set(previous(insns, site, targeted), null);
+                insns.set(site, null);
+            }
+            changed = true;
+        }
+
+        insns.removeIf(Objects::isNull);
+        return changed;
+    }
+
+    private static boolean removeDeadStores(MethodBodyInfo body) {
+        List<InstructionInfo> insns = body.instructions;
+        Set<Integer> read = new HashSet<>();
+        for (InstructionInfo insn : insns) {
+            if (isLoad(insn.opcode) || insn.opcode == Opcodes.IINC || insn.opcode == Opcodes.RET) {
+                read.add(insn.var);
+            }
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < insns.size(); i++) {
+            InstructionInfo insn = insns.get(i);
+            if (LoopAnalyzer.isStore(insn.opcode) && !read.contains(insn.var)) {
+                InstructionInfo pop = new InstructionInfo();
+                pop.opcode = size(insn.opcode) == 2 ? Opcodes.POP2 : Opcodes.POP;
+                pop.type = "INSN";
+                pop.stackTypes = insn.stackTypes;
+                insns.set(i, pop);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean removeUnreachable(MethodBodyInfo body) {
+        List<InstructionInfo> insns = body.instructions;
+        Map<Label, Integer> labelIndex = LoopAnalyzer.labelIndex(insns);
+        boolean[] reachable = new boolean[insns.size()];
+        Deque<Integer> work = new ArrayDeque<>();
+        work.push(0);
+
+        boolean grew = true;
+        while (grew) {
+            while (!work.isEmpty()) {
+                int i = work.pop();
+                if (i >= insns.size() || reachable[i]) {
+                    continue;
+                }
+                reachable[i] = true;
+                InstructionInfo insn = insns.get(i);
+                if (!LoopAnalyzer.endsBlock(insn.opcode)) {
+                    work.push(i + 1);
+                }
+                for (Label target : LoopAnalyzer.targets(insn)) {
+                    Integer index = labelIndex.get(target);
+                    if (index != null) {
+                        work.push(index);
+                    }
+                }
+            }
+
+            grew = false;
+            for (TryCatchInfo block : body.tryCatchBlocks) {
+                Integer start = labelIndex.get(block.start);
+                Integer end = labelIndex.get(block.end);
+                Integer handler = labelIndex.get(block.handler);
+                if (start == null || end == null || handler == null || reachable[handler]) {
+                    continue;
+                }
+                for (int i = start; i < end; i++) {
+                    if (reachable[i] && insns.get(i).opcode != -1) {
+                        work.push(handler);
+                        grew = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        Set<Label> referenced = targetedLabels(body);
+        for (TryCatchInfo block : body.tryCatchBlocks) {
+            referenced.add(block.start);
+            referenced.add(block.end);
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < insns.size(); i++) {
+            InstructionInfo insn = insns.get(i);
+            if (insn.opcode == -1 ? !referenced.contains(insn.label) : !reachable[i]) {
+                insns.set(i, null);
+                changed = true;
+            }
+        }
+        insns.removeIf(Objects::isNull);
+        return changed;
+    }
+
+    private static void replaceBranch(List<InstructionInfo> insns, int first, int branch, boolean taken) {
+        if (taken) {
+            InstructionInfo jump = new InstructionInfo();
+            jump.opcode = Opcodes.GOTO;
+            jump.type = "JUMP_INSN";
+            jump.label = insns.get(branch).label;
+            jump.stackTypes = insns.get(first).stackTypes;
+            insns.set(branch, jump);
+        } else {
+            insns.set(branch, null);
+        }
+        insns.set(first, null);
+    }
+
+    private static boolean jumpsToNext(List<InstructionInfo> insns, int index, Label target) {
+        for (int i = index + 1; i < insns.size(); i++) {
+            InstructionInfo insn = insns.get(i);
+            if (insn == null) {
+                continue;
+            }
+            if (insn.opcode != -1) {
+                return false;
+            }
+            if (insn.label == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int previous(List<InstructionInfo> insns, int index, Set<Label> targeted) {
+        for (int i = index - 1; i >= 0; i--) {
+            InstructionInfo insn = insns.get(i);
+            if (insn == null) {
+                continue;
+            }
+            if (insn.opcode != -1) {
+                return i;
+            }
+            if (targeted.contains(insn.label)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static Set<Label> targetedLabels(MethodBodyInfo body) {
+        Set<Label> targeted = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (InstructionInfo insn : body.instructions) {
+            if (insn != null) {
+                targeted.addAll(LoopAnalyzer.targets(insn));
+            }
+        }
+        for (TryCatchInfo block : body.tryCatchBlocks) {
+            targeted.add(block.handler);
+        }
+        return targeted;
+    }
+
+    private static int parameterSlots(MethodBodyInfo body) {
+        int slots = (body.access & Opcodes.ACC_STATIC) != 0 ? 0 : 1;
+        for (Type type : Type.getArgumentTypes(body.descriptor)) {
+            slots += type.getSize();
+        }
+        return slots;
+    }
+
+    private static Object constantOf(InstructionInfo insn) {
+        int op = insn.opcode;
+        if (op >= Opcodes.ICONST_M1 && op <= Opcodes.ICONST_5) {
+            return op - Opcodes.ICONST_0;
+        }
+        if (op == Opcodes.LCONST_0 || op == Opcodes.LCONST_1) {
+            return (long) (op - Opcodes.LCONST_0);
+        }
+        if (op >= Opcodes.FCONST_0 && op <= Opcodes.FCONST_2) {
+            return (float) (op - Opcodes.FCONST_0);
+        }
+        if (op == Opcodes.DCONST_0 || op == Opcodes.DCONST_1) {
+            return (double) (op - Opcodes.DCONST_0);
+        }
+        if (op == Opcodes.BIPUSH || op == Opcodes.SIPUSH) {
+            return insn.operand;
+        }
+        if (op == Opcodes.LDC && insn.constant instanceof Number) {
+            return insn.constant;
+        }
+        return null;
+    }
+
+    private static InstructionInfo constant(Object value, String stackTypes) {
+        InstructionInfo insn = new InstructionInfo();
+        insn.opcode = Opcodes.LDC;
+        insn.type = "LDC_INSN";
+        insn.constant = value;
+        insn.stackTypes = stackTypes;
+        return insn;
+    }
+
+    private static InstructionInfo load(InstructionInfo source, String stackTypes) {
+        InstructionInfo insn = new InstructionInfo();
+        insn.opcode = source.opcode;
+        insn.type = source.type;
+        insn.var = source.var;
+        insn.stackTypes = stackTypes;
+        return insn;
+    }
+
+    private static boolean representable(Object value) {
+        if (value instanceof Float) {
+            return Float.isFinite((Float) value);
+        }
+        if (value instanceof Double) {
+            return Double.isFinite((Double) value);
+        }
+        return !(value instanceof Long) || (Long) value != Long.MIN_VALUE;
+    }
+
+    private static Object foldUnary(int opcode, Object value) {
+        Object result = switch (opcode) {
+            case Opcodes.INEG -> value instanceof Integer v ? -v : null;
+            case Opcodes.LNEG -> value instanceof Long v ? -v : null;
+            case Opcodes.FNEG -> value instanceof Float v ? -v : null;
+            case Opcodes.DNEG -> value instanceof Double v ? -v : null;
+            case Opcodes.I2L -> value instanceof Integer v ? (long) v : null;
+            case Opcodes.I2F -> value instanceof Integer v ? (float) v : null;
+            case Opcodes.I2D -> value instanceof Integer v ? (double) v : null;
+            case Opcodes.L2I -> value instanceof Long v ? (int) (long) v : null;
+            case Opcodes.L2F -> value instanceof Long v ? (float) v : null;
+            case Opcodes.L2D -> value instanceof Long v ? (double) v : null;
+            case Opcodes.F2I -> value instanceof Float v ? (int) (float) v : null;
+            case Opcodes.F2L -> value instanceof Float v ? (long) (float) v : null;
+            case Opcodes.F2D -> value instanceof Float v ? (double) v : null;
+            case Opcodes.D2I -> value instanceof Double v ? (int) (double) v : null;
+            case Opcodes.D2L -> value instanceof Double v ? (long) (double) v : null;
+            case Opcodes.D2F -> value instanceof Double v ? (float) (double) v : null;
+            case Opcodes.I2B -> value instanceof Integer v ? (int) (byte) (int) v : null;
+            case Opcodes.I2C -> value instanceof Integer v ? (int) (char) (int) v : null;
+            case Opcodes.I2S -> value instanceof Integer v ? (int) (short) (int) v : null;
+            default -> null;
+        };
+        return result != null && representable(result) ? result : null;
+    }
+
+    private static Object foldBinary(int opcode, Object left, Object right) {
+        Object result = null;
+        if (left instanceof Integer a && right instanceof Integer b) {
+            result = switch (opcode) {
+                case Opcodes.IADD -> a + b;
+                case Opcodes.ISUB -> a - b;
+                case Opcodes.IMUL -> a * b;
+                case Opcodes.IDIV -> b != 0 ? a / b : null;
+                case Opcodes.IREM -> b != 0 ? a % b : null;
+                case Opcodes.ISHL -> a << b;
+                case Opcodes.ISHR -> a >> b;
+                case Opcodes.IUSHR -> a >>> b;
+                case Opcodes.IAND -> a & b;
+                case Opcodes.IOR -> a | b;
+                case Opcodes.IXOR -> a ^ b;
+                default -> null;
+            };
+        } else if (left instanceof Long a && right instanceof Integer b) {
+            result = switch (opcode) {
+                case Opcodes.LSHL -> a << b;
+                case Opcodes.LSHR -> a >> b;
+                case Opcodes.LUSHR -> a >>> b;
+                default -> null;
+            };
+        } else if (left instanceof Long a && right instanceof Long b) {
+            result = switch (opcode) {
+                case Opcodes.LADD -> a + b;
+                case Opcodes.LSUB -> a - b;
+                case Opcodes.LMUL -> a * b;
+                case Opcodes.LDIV -> b != 0 ? a / b : null;
+                case Opcodes.LREM -> b != 0 ? a % b : null;
+                case Opcodes.LAND -> a & b;
+                case Opcodes.LOR -> a | b;
+                case Opcodes.LXOR -> a ^ b;
+                case Opcodes.LCMP -> Long.compare(a, b);
+                default -> null;
+            };
+        } else if (left instanceof Float a && right instanceof Float b) {
+            result = switch (opcode) {
+                case Opcodes.FADD -> a + b;
+                case Opcodes.FSUB -> a - b;
+                case Opcodes.FMUL -> a * b;
+                case Opcodes.FDIV -> a / b;
+                case Opcodes.FREM -> a % b;
+                case Opcodes.FCMPL -> compareFloating(a, b, -1);
+                case Opcodes.FCMPG -> compareFloating(a, b, 1);
+                default -> null;
+            };
+        } else if (left instanceof Double a && right instanceof Double b) {
+            result = switch (opcode) {
+                case Opcodes.DADD -> a + b;
+                case Opcodes.DSUB -> a - b;
+                case Opcodes.DMUL -> a * b;
+                case Opcodes.DDIV -> a / b;
+                case Opcodes.DREM -> a % b;
+                case Opcodes.DCMPL -> compareFloating(a, b, -1);
+                case Opcodes.DCMPG -> compareFloating(a, b, 1);
+                default -> null;
+            };
+        }
+        return result != null && representable(result) ? result : null;
+    }
+
+    private static int compareFloating(double a, double b, int unordered) {
+        if (a > b) {
+            return 1;
+        }
+        if (a < b) {
+            return -1;
+        }
+        return a == b ? 0 : unordered;
+    }
+
+    private static boolean compare(int condition, int a, int b) {
+        return switch (condition) {
+            case 0 -> a == b;
+            case 1 -> a != b;
+            case 2 -> a < b;
+            case 3 -> a >= b;
+            case 4 -> a > b;
+            default -> a <= b;
+        };
+    }
+
+    private static boolean isLoad(int opcode) {
+        return opcode >= Opcodes.ILOAD && opcode <= Opcodes.ALOAD;
+    }
+
+    private static boolean isDiscard(int opcode) {
+        return opcode == Opcodes.POP || opcode == Opcodes.POP2;
+    }
+
+    private static int size(int opcode) {
+        int kind = opcode >= Opcodes.ISTORE ? opcode - Opcodes.ISTORE : opcode - Opcodes.ILOAD;
+        return kind == 1 || kind == 3 ? 2 : 1;
+    }
+
+    private static int sizeOf(Object constant) {
+        return constant instanceof Long || constant instanceof Double ? 2 : 1;
+    }
+}
@@ -20,7 +20,33 @@ public class NativeMethodInfo {
     public int getAccess() { return access; }
 
     public String getJniMethodName() {
-        return "Java_" + className.replace('/', '_') + "_" + methodName;
+        String params = descriptor.substring(1, descriptor.indexOf(')'));
+        return "Java_" + mangle(className) + "_" + mangle(methodName) + "__" + mangle(params);
+    }
+
+    public String getPureFunctionName() {
+        return "j2c_pure_" + getJniMethodName().substring("Java_".length());
+    }
+
+    private static String mangle(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '/') {
+                sb.append('_');
+            } else if (c == '_') {
+                sb.append("_1");
+            } else if (c == ';') {
+                sb.append("_2");
+            } else if (c == '[') {
+                sb.append("_3");
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                sb.append(c);
+            } else {
+                sb.append(String.format("_0%04x", (int) c));
+            }
+        }
+        return sb.toString();
     }
 
     public String getSimpleName() {
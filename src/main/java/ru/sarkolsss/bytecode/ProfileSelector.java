@@ -0,0 +1,133 @@
+package ru.sarkolsss.bytecode;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordingFile;
+import org.objectweb.asm.tree.MethodNode;
+import ru.sarkolsss.utils.Logger;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BiFunction;
+
+public class ProfileSelector {
+    public static final int DEFAULT_BUDGET = 32;
+    private static final double MIN_SELF_SHARE = 0.005;
+
+    private final ClassIndex classIndex;
+    private final int budget;
+    private final double maxSlowdown;
+    private final boolean keepJniBound;
+    private final BiFunction<InstructionInfo, String, MethodBodyInfo> inliner;
+    private final Map<String, Integer> selfSamples = new HashMap<>();
+    private int totalSamples;
+
+    public ProfileSelector(Path classesDir, int budget, double maxSlowdown, boolean keepJniBound,
+                           BiFunction<InstructionInfo, String, MethodBodyInfo> inliner) {
+        this.classIndex = new ClassIndex(classesDir);
+        this.budget = budget;
+        this.maxSlowdown = maxSlowdown;
+        this.keepJniBound = keepJniBound;
+        this.inliner = inliner;
+    }
+
+    public void addRecording(Path recording) throws IOException {
+        int samples = 0;
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                if (!"jdk.ExecutionSample".equals(event.getEventType().getName()) || event.getStackTrace() == null) {
+                    continue;
+                }
+                samples++;
+                for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+                    if (frame.isJavaFrame() && frame.getMethod() != null) {
+                        selfSamples.merge(key(frame.getMethod()), 1, Integer::sum);
+                        break;
+                    }
+                }
+            }
+        }
+        totalSamples += samples;
+        Logger.detail("Profile " + recording.getFileName() + ": " + samples + " execution samples");
+    }
+
+    public List<NativeMethodInfo> select(List<NativeMethodInfo> candidates, List<NativeMethodInfo> required) {
+        Set<String> requiredKeys = new HashSet<>();
+        for (NativeMethodInfo method : required) {
+            requiredKeys.add(key(method));
+        }
+
+        List<NativeMethodInfo> ranked = new ArrayList<>();
+        for (NativeMethodInfo method : candidates) {
+            if (selfSamples.getOrDefault(key(method), 0) > 0 && !requiredKeys.contains(key(method))) {
+                ranked.add(method);
+            }
+        }
+        ranked.sort(Comparator.comparingInt((NativeMethodInfo m) -> -selfSamples.get(key(m)))
+                .thenComparing(ProfileSelector::key));
+
+        List<NativeMethodInfo> compiled = new ArrayList<>(required);
+        compiled.addAll(ranked);
+        JniCostModel costModel = new JniCostModel(classIndex, compiled, inliner);
+
+        List<NativeMethodInfo> selected = new ArrayList<>(required);
+        int covered = 0;
+        for (NativeMethodInfo method : ranked) {
+            int samples = selfSamples.get(key(method));
+            double share = totalSamples > 0 ? (double) samples / totalSamples : 0;
+            String name = method.getSimpleName() + method.getDescriptor();
+
+            if (share < MIN_SELF_SHARE) {
+                Logger.detail(String.format("  %-48s %7s self  skipped: below %s of samples",
+                        name, percent(share), percent(MIN_SELF_SHARE)));
+                continue;
+            }
+            if (selected.size() - required.size() >= budget) {
+                Logger.detail(String.format("  %-48s %7s self  skipped: over budget of %d", name, percent(share), budget));
+                continue;
+            }
+
+            JniCostModel.Estimate estimate = estimate(costModel, method);
+            boolean jniBound = estimate == null || estimate.slowdown() > maxSlowdown;
+            String verdict = !jniBound ? "selected" : keepJniBound ? "selected, JNI-bound" : "skipped: JNI-bound";
+            Logger.detail(String.format("  %-48s %7s self  %s  %s", name, percent(share),
+                    estimate != null ? estimate.summary() : "no bytecode", verdict));
+            if (estimate != null) {
+                estimate.logLoops();
+            }
+
+            if (jniBound && !keepJniBound) {
+                continue;
+            }
+            if (jniBound && estimate != null) {
+                estimate.warnJniBound(name);
+            }
+            selected.add(method);
+            covered += samples;
+        }
+
+        Logger.detail("Profile: selected " + (selected.size() - required.size()) + " hot methods covering "
+                + percent(totalSamples > 0 ? (double) covered / totalSamples : 0) + " of samples"
+                + (required.isEmpty() ? "" : ", plus " + required.size() + " @Native methods"));
+        return selected;
+    }
+
+    private JniCostModel.Estimate estimate(JniCostModel costModel, NativeMethodInfo method) {
+        MethodNode node = classIndex.findMethod(method.getClassName(), method.getMethodName(), method.getDescriptor());
+        return node != null ? costModel.estimate(node, method.getClassName()) : null;
+    }
+
+    private static String percent(double share) {
+        return String.format(Locale.ROOT, "%.1f%%", share * 100);
+    }
+
+    private static String key(RecordedMethod method) {
+        return method.getType().getName().replace('.', '/') + "." + method.getName() + method.getDescriptor();
+    }
+
+    private static String key(NativeMethodInfo method) {
+        return method.getClassName() + "." + method.getMethodName() + method.getDescriptor();
+    }
+}
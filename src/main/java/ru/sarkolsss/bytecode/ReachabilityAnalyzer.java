@@ -0,0 +1,310 @@
+package ru.sarkolsss.bytecode;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+import ru.sarkolsss.utils.Logger;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class ReachabilityAnalyzer {
+    private final Map<String, ClassNode> classes = new HashMap<>();
+    private final Map<String, List<String>> subtypes = new HashMap<>();
+    private final Map<String, Set<String>> externalMethods = new HashMap<>();
+
+    private final Set<String> reachable = new HashSet<>();
+    private final Set<String> initializedClasses = new HashSet<>();
+    private final Set<String> instantiatedClasses = new HashSet<>();
+    private final Deque<MethodNode> worklist = new ArrayDeque<>();
+    private final Map<MethodNode, String> owners = new IdentityHashMap<>();
+
+    public ReachabilityAnalyzer(Path classesDir, List<String> classFiles) {
+        for (String classFile : classFiles) {
+            try {
+                ClassNode node = new ClassNode();
+                new ClassReader(Files.readAllBytes(classesDir.resolve(classFile)))
+                        .accept(node, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                classes.put(node.name, node);
+            } catch (IOException e) {
+                Logger.error("Failed to read class for reachability: " + classFile);
+            }
+        }
+
+        for (ClassNode node : classes.values()) {
+            if (node.superName != null) {
+                subtypes.computeIfAbsent(node.superName, k -> new ArrayList<>()).add(node.name);
+            }
+            for (String itf : node.interfaces) {
+                subtypes.computeIfAbsent(itf, k -> new ArrayList<>()).add(node.name);
+            }
+        }
+    }
+
+    public void addRoot(String root) {
+        String className = root;
+        String methodName = null;
+
+        int dot = root.lastIndexOf('.');
+        if (dot > root.lastIndexOf('/')) {
+            className = root.substring(0, dot);
+            methodName = root.substring(dot + 1);
+        }
+
+        ClassNode node = classes.get(className);
+        if (node == null) {
+            Logger.warning("Reachability root not found: " + root);
+            return;
+        }
+
+        initializeClass(className);
+        for (MethodNode method : node.methods) {
+            if (methodName == null || method.name.equals(methodName)) {
+                markReachable(className, method);
+            }
+        }
+    }
+
+    public void addMainClass(String mainClass) {
+        String className = mainClass.replace('.', '/');
+        initializeClass(className);
+        resolveAndMark(className, "main", "([Ljava/lang/String;)V");
+    }
+
+    public boolean hasRoots() {
+        return !reachable.isEmpty();
+    }
+
+    public List<NativeMethodInfo> filter(List<NativeMethodInfo> candidates) {
+        propagate();
+
+        List<NativeMethodInfo> kept = new ArrayList<>();
+        int skippedInstructions = 0;
+        for (NativeMethodInfo method : candidates) {
+            if (isReachable(method.getClassName(), method.getMethodName(), method.getDescriptor())) {
+                kept.add(method);
+            } else {
+                skippedInstructions += instructionCount(method);
+            }
+        }
+
+        int skipped = candidates.size() - kept.size();
+        Logger.detail("Reachability: " + reachable.size() + " methods reachable from roots");
+        Logger.detail("Reachability: kept " + kept.size() + " of " + candidates.size()
+                + " candidate methods, skipped " + skipped + " (" + skippedInstructions
+                + " bytecode instructions)");
+        return kept;
+    }
+
+    public boolean isReachable(String owner, String name, String descriptor) {
+        return reachable.contains(key(owner, name, descriptor));
+    }
+
+    private void propagate() {
+        while (!worklist.isEmpty()) {
+            MethodNode method = worklist.poll();
+            String owner = owners.get(method);
+
+            for (AbstractInsnNode insn : method.instructions) {
+                if (insn instanceof MethodInsnNode) {
+                    MethodInsnNode call = (MethodInsnNode) insn;
+                    initializeClass(call.owner);
+                    resolveAndMark(call.owner, call.name, call.desc);
+                    if (call.getOpcode() == Opcodes.INVOKEVIRTUAL
+                            || call.getOpcode() == Opcodes.INVOKEINTERFACE) {
+                        markOverrides(call.owner, call.name, call.desc);
+                    }
+                } else if (insn instanceof FieldInsnNode) {
+                    int opcode = insn.getOpcode();
+                    if (opcode == Opcodes.GETSTATIC || opcode == Opcodes.PUTSTATIC) {
+                        initializeClass(((FieldInsnNode) insn).owner);
+                    }
+                } else if (insn instanceof TypeInsnNode && insn.getOpcode() == Opcodes.NEW) {
+                    instantiate(((TypeInsnNode) insn).desc);
+                } else if (insn instanceof InvokeDynamicInsnNode) {
+                    InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+                    markHandle(indy.bsm);
+                    for (Object arg : indy.bsmArgs) {
+                        if (arg instanceof Handle) {
+                            markHandle((Handle) arg);
+                        }
+                    }
+                } else if (insn instanceof LdcInsnNode && ((LdcInsnNode) insn).cst instanceof Handle) {
+                    markHandle((Handle) ((LdcInsnNode) insn).cst);
+                }
+            }
+
+            if (method.name.equals("<init>")) {
+                instantiate(owner);
+            }
+        }
+    }
+
+    private void markHandle(Handle handle) {
+        initializeClass(handle.getOwner());
+        resolveAndMark(handle.getOwner(), handle.getName(), handle.getDesc());
+        if (handle.getTag() == Opcodes.H_INVOKEVIRTUAL || handle.getTag() == Opcodes.H_INVOKEINTERFACE) {
+            markOverrides(handle.getOwner(), handle.getName(), handle.getDesc());
+        }
+    }
+
+    private void resolveAndMark(String owner, String name, String descriptor) {
+        Deque<String> pending = new ArrayDeque<>();
+        pending.add(owner);
+
+        while (!pending.isEmpty()) {
+            ClassNode node = classes.get(pending.poll());
+            if (node == null) {
+                continue;
+            }
+
+            MethodNode method = findMethod(node, name, descriptor);
+            if (method != null && (method.access & Opcodes.ACC_ABSTRACT) == 0) {
+                markReachable(node.name, method);
+                return;
+            }
+
+            if (node.superName != null) {
+                pending.add(node.superName);
+            }
+            pending.addAll(node.interfaces);
+        }
+    }
+
+    private void markOverrides(String owner, String name, String descriptor) {
+        Deque<String> pending = new ArrayDeque<>(subtypes.getOrDefault(owner, List.of()));
+        Set<String> visited = new HashSet<>();
+
+        while (!pending.isEmpty()) {
+            String subtype = pending.poll();
+            if (!visited.add(subtype)) {
+                continue;
+            }
+
+            MethodNode method = findMethod(classes.get(subtype), name, descriptor);
+            if (method != null) {
+                markReachable(subtype, method);
+            }
+            pending.addAll(subtypes.getOrDefault(subtype, List.of()));
+        }
+    }
+
+    private void initializeClass(String className) {
+        while (className != null && initializedClasses.add(className)) {
+            ClassNode node = classes.get(className);
+            if (node == null) {
+                return;
+            }
+
+            MethodNode clinit = findMethod(node, "<clinit>", "()V");
+            if (clinit != null) {
+                markReachable(className, clinit);
+            }
+            className = node.superName;
+        }
+    }
+
+    private void instantiate(String className) {
+        if (!instantiatedClasses.add(className)) {
+            return;
+        }
+        initializeClass(className);
+
+        Set<String> callbacks = collectExternalMethods(className, new HashSet<>());
+        for (String current = className; current != null; ) {
+            ClassNode node = classes.get(current);
+            if (node == null) {
+                break;
+            }
+            for (MethodNode method : node.methods) {
+                if (callbacks.contains(method.name + method.desc)) {
+                    markReachable(current, method);
+                }
+            }
+            current = node.superName;
+        }
+    }
+
+    private Set<String> collectExternalMethods(String className, Set<String> visited) {
+        Set<String> result = new HashSet<>();
+        if (className == null || !visited.add(className)) {
+            return result;
+        }
+
+        ClassNode node = classes.get(className);
+        if (node == null) {
+            result.addAll(readExternalMethods(className));
+            return result;
+        }
+
+        result.addAll(collectExternalMethods(node.superName, visited));
+        for (String itf : node.interfaces) {
+            result.addAll(collectExternalMethods(itf, visited));
+        }
+        return result;
+    }
+
+    private Set<String> readExternalMethods(String className) {
+        Set<String> cached = externalMethods.get(className);
+        if (cached != null) {
+            return cached;
+        }
+
+        Set<String> methods = new HashSet<>();
+        externalMethods.put(className, methods);
+
+        try (InputStream in = ClassLoader.getSystemResourceAsStream(className + ".class")) {
+            if (in == null) {
+                return methods;
+            }
+
+            ClassNode node = new ClassNode();
+            new ClassReader(in.readAllBytes()).accept(node, ClassReader.SKIP_CODE);
+            for (MethodNode method : node.methods) {
+                if ((method.access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) == 0) {
+                    methods.add(method.name + method.desc);
+                }
+            }
+            if (node.superName != null) {
+                methods.addAll(readExternalMethods(node.superName));
+            }
+            for (String itf : node.interfaces) {
+                methods.addAll(readExternalMethods(itf));
+            }
+        } catch (IOException ignored) {
+        }
+        return methods;
+    }
+
+    private void markReachable(String owner, MethodNode method) {
+        if (reachable.add(key(owner, method.name, method.desc))) {
+            owners.put(method, owner);
+            worklist.add(method);
+        }
+    }
+
+    private int instructionCount(NativeMethodInfo method) {
+        MethodNode node = findMethod(classes.get(method.getClassName()),
+                method.getMethodName(), method.getDescriptor());
+        return node != null ? node.instructions.size() : 0;
+    }
+
+    private MethodNode findMethod(ClassNode node, String name, String descriptor) {
+        if (node == null) {
+            return null;
+        }
+        for (MethodNode method : node.methods) {
+            if (method.name.equals(name) && method.desc.equals(descriptor)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static String key(String owner, String name, String descriptor) {
+        return owner + "." + name + descriptor;
+    }
+}
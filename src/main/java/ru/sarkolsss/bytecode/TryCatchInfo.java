@@ -0,0 +1,10 @@
+package ru.sarkolsss.bytecode;
+
+import org.objectweb.asm.Label;
+
+public class TryCatchInfo {
+    public Label start;
+    public Label end;
+    public Label handler;
+    public String type;
+}
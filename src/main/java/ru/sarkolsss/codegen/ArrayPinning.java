@@ -0,0 +1,284 @@
+package ru.sarkolsss.codegen;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import ru.sarkolsss.bytecode.InstructionInfo;
+import ru.sarkolsss.bytecode.LoopAnalyzer;
+import ru.sarkolsss.bytecode.MethodBodyInfo;
+import ru.sarkolsss.bytecode.NativeMethodInfo;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+public class ArrayPinning {
+    public static final int CRITICAL_MAX_LENGTH = 1 << 16;
+
+    private final List<PinnedArray> arrays = new ArrayList<>();
+    private final Map<String, PinnedArray> byParam = new HashMap<>();
+
+    public static ArrayPinning plan(MethodBodyInfo body, NativeMethodInfo method) {
+        Map<Integer, PinnedArray> slots = new HashMap<>();
+        ArrayPinning pinning = new ArrayPinning();
+
+        int slot = (method.getAccess() & Opcodes.ACC_STATIC) == 0 ? 1 : 0;
+        Type[] params = Type.getArgumentTypes(method.getDescriptor());
+        for (int i = 0; i < params.length; i++) {
+            Type param = params[i];
+            if (param.getSort() == Type.ARRAY && param.getDimensions() == 1
+                    && param.getElementType().getSort() <= Type.DOUBLE) {
+                PinnedArray array = new PinnedArray();
+                array.param = "param" + i;
+                array.elementType = elementType(param.getElementType());
+                array.data = "pin_" + pinning.arrays.size();
+                array.length = "pin_len_" + pinning.arrays.size();
+                pinning.arrays.add(array);
+                pinning.byParam.put(array.param, array);
+                slots.put(slot, array);
+            }
+            slot += param.getSize();
+        }
+
+        if (slots.isEmpty() || !body.tryCatchBlocks.isEmpty()) {
+            return null;
+        }
+
+        boolean accessesArrays = false;
+        for (InstructionInfo insn : body.instructions) {
+            if (!isPinSafe(insn, slots)) {
+                return null;
+            }
+            if (insn.opcode == Opcodes.ARRAYLENGTH
+                    || (insn.opcode >= Opcodes.IALOAD && insn.opcode <= Opcodes.SALOAD)
+                    || (insn.opcode >= Opcodes.IASTORE && insn.opcode <= Opcodes.SASTORE)) {
+                accessesArrays = true;
+            }
+        }
+
+        if (!accessesArrays || LoopAnalyzer.findLoops(body).isEmpty()) {
+            return null;
+        }
+        return pinning;
+    }
+
+    private static boolean isPinSafe(InstructionInfo insn, Map<Integer, PinnedArray> slots) {
+        int op = insn.opcode;
+        if (op == -1) {
+            return true;
+        }
+        if (op == Opcodes.ALOAD) {
+            return slots.containsKey(insn.var);
+        }
+        if (op == Opcodes.LDC) {
+            return insn.constant instanceof Number;
+        }
+        if (op == Opcodes.AALOAD || op == Opcodes.AASTORE || op == Opcodes.ASTORE
+                || op == Opcodes.IF_ACMPEQ || op == Opcodes.IF_ACMPNE) {
+            return false;
+        }
+        return op <= Opcodes.IF_ACMPNE
+                || op == Opcodes.GOTO
+                || op == Opcodes.TABLESWITCH || op == Opcodes.LOOKUPSWITCH
+                || (op >= Opcodes.IRETURN && op <= Opcodes.DRETURN)
+                || op == Opcodes.RETURN
+                || op == Opcodes.ARRAYLENGTH
+                || op == Opcodes.IFNULL || op == Opcodes.IFNONNULL;
+    }
+
+    private static String elementType(Type type) {
+        return switch (type.getSort()) {
+            case Type.BOOLEAN -> "jboolean";
+            case Type.BYTE -> "jbyte";
+            case Type.CHAR -> "jchar";
+            case Type.SHORT -> "jshort";
+            case Type.LONG -> "jlong";
+            case Type.FLOAT -> "jfloat";
+            case Type.DOUBLE -> "jdouble";
+            default -> "jint";
+        };
+    }
+
+    public PinnedArray get(String operand) {
+        return byParam.get(operand);
+    }
+
+    public String boundsCheck(PinnedArray array, String index, String returnDefault) {
+        return "    if ((unsigned int)(" + index + ") >= (unsigned int)" + array.length + ") { "
+                + "j2c_fault = " + array.param + " == nullptr ? 1 : 2; "
+                + "return" + (returnDefault != null ? " " + returnDefault : "") + "; }\n";
+    }
+
+    public String nullCheck(PinnedArray array, String returnDefault) {
+        return "    if (" + array.param + " == nullptr) { j2c_fault = 1; "
+                + "return" + (returnDefault != null ? " " + returnDefault : "") + "; }\n";
+    }
+
+    public String divisionCheck(String divisor, String returnDefault) {
+        return "    if (" + divisor + " == 0) { j2c_fault = 3; "
+                + "return" + (returnDefault != null ? " " + returnDefault : "") + "; }\n";
+    }
+
+    public String wrap(String body, String returnType, String returnDefault, JniRegistry registry) {
+        StringBuilder code = new StringBuilder();
+        boolean isVoid = returnType.equals("void");
+
+        StringBuilder total = new StringBuilder("(jlong)0");
+        StringBuilder acquired = new StringBuilder();
+        for (PinnedArray array : arrays) {
+            code.append("    jsize ").append(array.length).append(" = ").append(array.param)
+                    .append(" != nullptr ? env->GetArrayLength((jarray)").append(array.param)
+                    .append(") : 0;\n");
+            List<PinnedArray> earlier = aliasCandidates(array);
+            if (earlier.isEmpty()) {
+                total.append(" + ").append(array.length);
+            } else {
+                code.append("    int ").append(array.data).append("_owner = ").append(array.param)
+                        .append(" == nullptr ? -1 : ");
+                for (PinnedArray other : earlier) {
+                    code.append("env->IsSameObject(").append(array.param).append(", ").append(other.param)
+                            .append(") ? ").append(arrays.indexOf(other)).append(" : ");
+                }
+                code.append("-1;\n");
+                total.append(" + (").append(array.data).append("_owner >= 0 ? 0 : ").append(array.length).append(")");
+            }
+            if (acquired.length() > 0) {
+                acquired.append(" && ");
+            }
+            acquired.append("(").append(array.param).append(" == nullptr || ")
+                    .append(array.data).append(" != nullptr)");
+        }
+
+        for (PinnedArray array : arrays) {
+            List<PinnedArray> writers = aliasWriters(array);
+            if (!array.written && !writers.isEmpty()) {
+                code.append("    jint ").append(array.data).append("_mode = ").append(array.param)
+                        .append(" != nullptr && (").append(sameObject(array, writers)).append(") ? 0 : JNI_ABORT;\n");
+            }
+        }
+        code.append("    bool pin_critical = ").append(total).append(" <= J2C_CRITICAL_MAX_LENGTH;\n");
+        for (PinnedArray array : arrays) {
+            List<PinnedArray> earlier = aliasCandidates(array);
+            code.append("    ").append(array.elementType).append("* ").append(array.data)
+                    .append(" = ").append(array.param).append(" == nullptr ? nullptr : ");
+            if (!earlier.isEmpty()) {
+                for (PinnedArray other : earlier) {
+                    code.append(array.data).append("_owner == ").append(arrays.indexOf(other)).append(" ? ")
+                            .append(other.data).append(" : ");
+                }
+            }
+            code.append("j2c_pin<").append(array.elementType).append(">(env, (jarray)").append(array.param)
+                    .append(", pin_critical);\n");
+        }
+
+        code.append("    int j2c_fault = 0;\n");
+        if (!isVoid) {
+            code.append("    ").append(returnType).append(" pin_result = ").append(returnDefault).append(";\n");
+        }
+        code.append("    if (").append(acquired).append(") {\n");
+        code.append("        ").append(isVoid ? "" : "pin_result = ")
+                .append("[&]() -> ").append(returnType).append(" {\n");
+        code.append(body);
+        code.append("        }();\n");
+        code.append("    }\n");
+
+        for (int i = arrays.size() - 1; i >= 0; i--) {
+            PinnedArray array = arrays.get(i);
+            code.append("    if (").append(array.data).append(" != nullptr");
+            if (!aliasCandidates(array).isEmpty()) {
+                code.append(" && ").append(array.data).append("_owner < 0");
+            }
+            code.append(") j2c_unpin<").append(array.elementType).append(">(env, (jarray)").append(array.param)
+                    .append(", ").append(array.data).append(", pin_critical, ")
+                    .append(releaseMode(array)).append(");\n");
+        }
+
+        code.append("    if (j2c_fault == 1) env->ThrowNew(")
+                .append(registry.classRef("java/lang/NullPointerException")).append(", nullptr);\n");
+        code.append("    else if (j2c_fault == 2) env->ThrowNew(")
+                .append(registry.classRef("java/lang/ArrayIndexOutOfBoundsException"))
+                .append(", \"Array index out of range\");\n");
+        code.append("    else if (j2c_fault == 3) env->ThrowNew(")
+                .append(registry.classRef("java/lang/ArithmeticException")).append(", \"/ by zero\");\n");
+        if (!isVoid) {
+            code.append("    return pin_result;\n");
+        }
+        return code.toString();
+    }
+
+    private List<PinnedArray> aliasCandidates(PinnedArray array) {
+        List<PinnedArray> candidates = new ArrayList<>();
+        for (PinnedArray other : arrays) {
+            if (other == array) {
+                break;
+            }
+            if (other.elementType.equals(array.elementType)) {
+                candidates.add(other);
+            }
+        }
+        return candidates;
+    }
+
+    private List<PinnedArray> aliasWriters(PinnedArray array) {
+        List<PinnedArray> writers = new ArrayList<>();
+        for (PinnedArray other : arrays) {
+            if (other != array && other.written && other.elementType.equals(array.elementType)) {
+                writers.add(other);
+            }
+        }
+        return writers;
+    }
+
+    private String releaseMode(PinnedArray array) {
+        if (array.written) {
+            return "0";
+        }
+        return aliasWriters(array).isEmpty() ? "JNI_ABORT" : array.data + "_mode";
+    }
+
+    private static String sameObject(PinnedArray array, List<PinnedArray> others) {
+        StringJoiner joiner = new StringJoiner(" || ");
+        for (PinnedArray other : others) {
+            joiner.add("env->IsSameObject(" + array.param + ", " + other.param + ")");
+        }
+        return joiner.toString();
+    }
+
+    public static void writeRuntime(Writer out) throws IOException {
+        out.write("#define J2C_CRITICAL_MAX_LENGTH " + CRITICAL_MAX_LENGTH + "\n\n");
+        out.write("template<typename T> struct J2cArrayOps;\n\n");
+        out.write("#define J2C_ARRAY_OPS(T, Name) \\\n");
+        out.write("    template<> struct J2cArrayOps<T> { \\\n");
+        out.write("        static T* get(JNIEnv* env, jarray a) { \\\n");
+        out.write("            return env->Get##Name##ArrayElements((T##Array)a, nullptr); \\\n");
+        out.write("        } \\\n");
+        out.write("        static void release(JNIEnv* env, jarray a, T* data, jint mode) { \\\n");
+        out.write("            env->Release##Name##ArrayElements((T##Array)a, data, mode); \\\n");
+        out.write("        } \\\n");
+        out.write("    };\n\n");
+        out.write("J2C_ARRAY_OPS(jboolean, Boolean)\n");
+        out.write("J2C_ARRAY_OPS(jbyte, Byte)\n");
+        out.write("J2C_ARRAY_OPS(jchar, Char)\n");
+        out.write("J2C_ARRAY_OPS(jshort, Short)\n");
+        out.write("J2C_ARRAY_OPS(jint, Int)\n");
+        out.write("J2C_ARRAY_OPS(jlong, Long)\n");
+        out.write("J2C_ARRAY_OPS(jfloat, Float)\n");
+        out.write("J2C_ARRAY_OPS(jdouble, Double)\n\n");
+        out.write("template<typename T>\n");
+        out.write("static inline T* j2c_pin(JNIEnv* env, jarray array, bool critical) {\n");
+        out.write("    return critical ? (T*)env->GetPrimitiveArrayCritical(array, nullptr)\n");
+        out.write("                    : J2cArrayOps<T>::get(env, array);\n");
+        out.write("}\n\n");
+        out.write("template<typename T>\n");
+        out.write("static inline void j2c_unpin(JNIEnv* env, jarray array, T* data, bool critical, jint mode) {\n");
+        out.write("    if (critical) env->ReleasePrimitiveArrayCritical(array, data, mode);\n");
+        out.write("    else J2cArrayOps<T>::release(env, array, data, mode);\n");
+        out.write("}\n\n");
+    }
+
+    public static class PinnedArray {
+        public String param;
+        public String elementType;
+        public String data;
+        public String length;
+        public boolean written;
+    }
+}
@@ -0,0 +1,166 @@
+package ru.sarkolsss.codegen;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import ru.sarkolsss.bytecode.InstructionInfo;
+import ru.sarkolsss.bytecode.LoopAnalyzer;
+import ru.sarkolsss.bytecode.MethodBodyInfo;
+import java.util.*;
+
+public class BoxingElimination {
+    private static final Map<String, Type> BOX_TYPES = Map.of(
+            "java/lang/Boolean", Type.BOOLEAN_TYPE,
+            "java/lang/Byte", Type.BYTE_TYPE,
+            "java/lang/Character", Type.CHAR_TYPE,
+            "java/lang/Short", Type.SHORT_TYPE,
+            "java/lang/Integer", Type.INT_TYPE,
+            "java/lang/Long", Type.LONG_TYPE,
+            "java/lang/Float", Type.FLOAT_TYPE,
+            "java/lang/Double", Type.DOUBLE_TYPE
+    );
+
+    private final Map<Integer, Pair> pairs = new HashMap<>();
+
+    public void clear() {
+        pairs.clear();
+    }
+
+    public void analyze(MethodBodyInfo body) {
+        clear();
+
+        List<InstructionInfo> insns = body.instructions;
+        Set<Label> targeted = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<Integer, Integer> loads = new HashMap<>();
+        Map<Integer, Integer> stores = new HashMap<>();
+        for (InstructionInfo insn : insns) {
+            targeted.addAll(LoopAnalyzer.targets(insn));
+            if (insn.opcode == Opcodes.ALOAD) {
+                loads.merge(insn.var, 1, Integer::sum);
+            } else if (insn.opcode == Opcodes.ASTORE) {
+                stores.merge(insn.var, 1, Integer::sum);
+            }
+        }
+
+        for (int i = 0; i < insns.size(); i++) {
+            Type boxed = boxedType(insns.get(i));
+            if (boxed == null) {
+                continue;
+            }
+
+            int next = skipLabels(insns, i + 1, targeted);
+            if (next < insns.size() && insns.get(next).opcode == Opcodes.ASTORE) {
+                int var = insns.get(next).var;
+                int load = skipLabels(insns, next + 1, targeted);
+                if (load < insns.size() && insns.get(load).opcode == Opcodes.ALOAD
+                        && insns.get(load).var == var
+                        && loads.getOrDefault(var, 0) == 1 && stores.getOrDefault(var, 0) == 1) {
+                    next = skipLabels(insns, load + 1, targeted);
+                }
+            }
+            if (next < insns.size() && insns.get(next).opcode == Opcodes.CHECKCAST) {
+                next = skipLabels(insns, next + 1, targeted);
+            }
+            if (next >= insns.size()) {
+                continue;
+            }
+
+            Type unboxed = unboxedType(insns.get(next), insns.get(i).owner);
+            if (unboxed != null && widens(boxed, unboxed)) {
+                pairs.put(i, new Pair(next, boxed.equals(unboxed) ? null : cppType(unboxed)));
+            }
+        }
+    }
+
+    public int pairEnd(int index) {
+        Pair pair = pairs.get(index);
+        return pair != null ? pair.end : -1;
+    }
+
+    public String unboxed(int index, String value) {
+        Pair pair = pairs.get(index);
+        return pair.cast != null ? "(" + pair.cast + ")(" + value + ")" : value;
+    }
+
+    private static int skipLabels(List<InstructionInfo> insns, int index, Set<Label> targeted) {
+        while (index < insns.size() && insns.get(index).opcode == -1
+                && !targeted.contains(insns.get(index).label)) {
+            index++;
+        }
+        return index;
+    }
+
+    private static Type boxedType(InstructionInfo insn) {
+        if (insn.opcode != Opcodes.INVOKESTATIC || !"valueOf".equals(insn.name)) {
+            return null;
+        }
+        Type primitive = BOX_TYPES.get(insn.owner);
+        if (primitive == null) {
+            return null;
+        }
+        String expected = "(" + primitive.getDescriptor() + ")L" + insn.owner + ";";
+        return expected.equals(insn.descriptor) ? primitive : null;
+    }
+
+    private static Type unboxedType(InstructionInfo insn, String boxClass) {
+        if (insn.opcode != Opcodes.INVOKEVIRTUAL || insn.name == null
+                || !insn.name.endsWith("Value") || !insn.descriptor.startsWith("()")) {
+            return null;
+        }
+
+        Type primitive = BOX_TYPES.get(boxClass);
+        boolean numeric = primitive.getSort() >= Type.BYTE;
+        if (!insn.owner.equals(boxClass) && !(numeric && insn.owner.equals("java/lang/Number"))) {
+            return null;
+        }
+
+        Type result = Type.getReturnType(insn.descriptor);
+        String expectedName = result.getClassName() + "Value";
+        return insn.name.equals(expectedName) ? result : null;
+    }
+
+    private static boolean widens(Type from, Type to) {
+        if (from.equals(to)) {
+            return true;
+        }
+        int source = from.getSort();
+        int target = to.getSort();
+        if (source == Type.BOOLEAN || target == Type.BOOLEAN || target == Type.CHAR) {
+            return false;
+        }
+        if (target == Type.DOUBLE) {
+            return true;
+        }
+        if (target == Type.FLOAT) {
+            return source != Type.DOUBLE;
+        }
+        if (target == Type.LONG) {
+            return source != Type.FLOAT && source != Type.DOUBLE;
+        }
+        if (target == Type.INT) {
+            return source == Type.BYTE || source == Type.SHORT || source == Type.CHAR;
+        }
+        return target == Type.SHORT && source == Type.BYTE;
+    }
+
+    private static String cppType(Type type) {
+        return switch (type.getSort()) {
+            case Type.BYTE -> "jbyte";
+            case Type.SHORT -> "jshort";
+            case Type.LONG -> "jlong";
+            case Type.FLOAT -> "jfloat";
+            case Type.DOUBLE -> "jdouble";
+            default -> "jint";
+        };
+    }
+
+    private static class Pair {
+        final int end;
+        final String cast;
+
+        Pair(int end, String cast) {
+            this.end = end;
+            this.cast = cast;
+        }
+    }
+}
@@ -1,104 +1,545 @@
 package ru.sarkolsss.codegen;
 
+import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import ru.sarkolsss.bytecode.ClassIndex;
 import ru.sarkolsss.bytecode.InstructionInfo;
+import ru.sarkolsss.bytecode.LoopAnalyzer;
 import ru.sarkolsss.bytecode.MethodBodyInfo;
 import ru.sarkolsss.bytecode.NativeMethodInfo;
+import ru.sarkolsss.bytecode.TryCatchInfo;
+import ru.sarkolsss.ir.NullCheckElimination;
+import ru.sarkolsss.ir.SsaBuilder;
+import ru.sarkolsss.ir.SsaMethod;
+import ru.sarkolsss.ir.VariableCoalescing;
 import ru.sarkolsss.utils.Logger;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class BytecodeTranslator {
+    private static final Pattern ATOM = Pattern.compile("[A-Za-z_]\\w*|(\\(j[a-z]+\\))?-?\\d[\\w.+-]*");
+    private static final Pattern GOTO_LABEL = Pattern.compile("goto (label_\\d+);");
+    private static final Pattern LABEL_LINE = Pattern.compile("(?m)^(label_\\d+):\n");
+    private static final String LOCAL_PREFIX = "local_";
+
     private final TypeMapper typeMapper;
     private final JniHelper jniHelper;
+    private final JniRegistry registry;
+    private final LoopInvariantHoister hoister;
+    private final NativeCallTable nativeCalls;
+    private final MethodInliner inliner;
+    private final LocalRefFrames frames = new LocalRefFrames();
+    private final BoxingElimination boxing = new BoxingElimination();
+    private final ExceptionDispatch exceptions = new ExceptionDispatch();
+    private final ControlFlowStructurer structurer = new ControlFlowStructurer();
+    private final NullCheckElimination nullChecks = new NullCheckElimination();
+    private final VariableCoalescing variables = new VariableCoalescing();
+    private final Set<String> ownedRefs = new HashSet<>();
+    private final Set<String> nonNull = new HashSet<>();
+    private ArrayPinning pinning;
+    private String pinReturnDefault;
+    private final Map<String, String> declarations = new LinkedHashMap<>();
+    private final Map<Integer, Character> paramSlotTypes = new HashMap<>();
+    private String methodReturnType;
+    private String currentClass;
+    private String currentFunction;
+    private String localPrefix = LOCAL_PREFIX;
+    private int inlineCounter;
     private int tempVarCounter;
     private int labelCounter;
+    private int nullCheckPosition = -1;
+    private int eliminatedNullChecks;
+    private int coalescedCopies;
 
-    public BytecodeTranslator(TypeMapper typeMapper) {
+    public BytecodeTranslator(TypeMapper typeMapper, JniRegistry registry, ClassIndex classIndex,
+                              NativeCallTable nativeCalls, MethodInliner inliner) {
         this.typeMapper = typeMapper;
         this.jniHelper = new JniHelper();
+        this.registry = registry;
+        this.nativeCalls = nativeCalls;
+        this.inliner = inliner;
+        this.hoister = new LoopInvariantHoister(classIndex, typeMapper, jniHelper, registry);
+    }
+
+    public int eliminatedNullChecks() {
+        return eliminatedNullChecks;
+    }
+
+    public int coalescedCopies() {
+        return coalescedCopies;
     }
 
     public String translateMethodBody(MethodBodyInfo bodyInfo, NativeMethodInfo method) {
         StringBuilder code = new StringBuilder();
         tempVarCounter = 0;
         labelCounter = 0;
+        inlineCounter = 0;
+        declarations.clear();
+        paramSlotTypes.clear();
 
         Stack<String> stack = new Stack<>();
         Map<Integer, String> locals = new HashMap<>();
-        Map<String, String> labels = new HashMap<>();
-        Set<String> emittedLabels = new HashSet<>();
+        Map<Label, String> labels = new IdentityHashMap<>();
+        String returnType = typeMapper.getReturnType(method.getDescriptor());
+        methodReturnType = returnType;
+        currentClass = bodyInfo.className;
+        currentFunction = method.getJniMethodName();
 
         int paramIndex = 0;
         if ((method.getAccess() & Opcodes.ACC_STATIC) == 0) {
-            locals.put(paramIndex++, "thisObj");
+            paramSlotTypes.put(paramIndex, 'A');
+            locals.put(paramIndex++, "obj");
         }
 
-        String[] paramTypes = typeMapper.getParameterTypes(method.getDescriptor());
-        for (int i = 0; i < paramTypes.length; i++) {
-            locals.put(paramIndex++, "param" + i);
+        Type[] argumentTypes = Type.getArgumentTypes(method.getDescriptor());
+        for (int i = 0; i < argumentTypes.length; i++) {
+            paramSlotTypes.put(paramIndex, slotType(argumentTypes[i]));
+            locals.put(paramIndex, "param" + i);
+            paramIndex += argumentTypes[i].getSize();
         }
 
         try {
-            boolean needsSemicolon = false;
+            ownedRefs.clear();
+            nonNull.clear();
+            nonNull.add("obj");
+            boxing.analyze(bodyInfo);
+            pinning = ArrayPinning.plan(bodyInfo, method);
+            if (pinning != null) {
+                hoister.clear();
+                frames.clear();
+                pinReturnDefault = returnType.equals("void") ? null : typeMapper.getDefaultValue(returnType);
+            } else {
+                hoister.analyze(bodyInfo, method);
+                frames.analyze(bodyInfo);
+                frames.nameOwnedFlags(slot -> ownedFlag(slot, locals));
+            }
+            exceptions.analyze(bodyInfo, frames);
+            structurer.analyze(bodyInfo);
+            SsaMethod ssa = SsaBuilder.build(bodyInfo);
+            variables.analyze(ssa, bodyInfo);
+            if (pinning != null) {
+                nullChecks.clear();
+            } else {
+                nullChecks.analyze(ssa, bodyInfo.instructions, skippedInstructions(bodyInfo));
+            }
+
+            code.append("    {\n");
+            boolean reachable = true;
 
             for (int i = 0; i < bodyInfo.instructions.size(); i++) {
                 InstructionInfo insn = bodyInfo.instructions.get(i);
-                boolean isLabelOnly = (insn.opcode == -1 && "LABEL".equals(insn.type));
-
-                if (isLabelOnly && insn.label != null) {
-                    String labelName = getOrCreateLabel(insn.label, labels);
-
-                    if (!emittedLabels.contains(labelName)) {
-                        if (needsSemicolon) {
-                            code.append("    ;\n");
-                            needsSemicolon = false;
-                        }
+                exceptions.setPosition(i);
+                nullCheckPosition = i;
+                hoister.writeLoads(i, slot -> localName(slot, 'A', locals), exceptions, code);
+                frames.writeEntry(i, exceptions, code);
+
+                int pairEnd = boxing.pairEnd(i);
+                if (pairEnd >= 0 && !stack.isEmpty()) {
+                    stack.push(boxing.unboxed(i, stack.pop()));
+                    i = pairEnd;
+                    continue;
+                }
 
-                        code.append(labelName).append(":\n");
-                        emittedLabels.add(labelName);
-                        needsSemicolon = true;
+                int chainEnd = hoister.chainEnd(i);
+                if (chainEnd >= 0) {
+                    nullCheckPosition = i + 1;
+                    appendNullCheck(localName(hoister.chainVar(i), 'A', locals), code);
+                    if (hoister.chainBase(i) != null) {
+                        nullCheckPosition = i + 2;
+                        appendNullCheck(hoister.chainBase(i), code);
                     }
+                    stack.push(hoister.chainValue(i));
+                    i = chainEnd;
                     continue;
                 }
 
-                if (needsSemicolon && insn.opcode != -1) {
-                    needsSemicolon = false;
+                if (closeRegions(i, insn.stackTypes, reachable, stack, code)) {
+                    reachable = true;
+                }
+
+                if (insn.opcode == -1 && "LABEL".equals(insn.type) && insn.label != null) {
+                    if (reachable) {
+                        spillStack(stack, insn.stackTypes, code);
+                    }
+                    restoreStack(stack, insn.stackTypes);
+                    code.append("    }\n").append(getOrCreateLabel(insn.label, labels)).append(":\n    {\n");
+                    if (structurer.loopAt(i) != null) {
+                        code.append("    while (true) {\n    {\n");
+                    }
+                    reachable = true;
+                    continue;
                 }
 
                 String translated = translateInstruction(insn, stack, locals, code, labels);
+                if (LocalRefFrames.producesLocalRef(insn) && !stack.isEmpty()) {
+                    ownedRefs.add(stack.peek());
+                }
+                if ("JUMP_INSN".equals(insn.type) && insn.label != null) {
+                    String gotoStatement = "goto " + getOrCreateLabel(insn.label, labels) + ";";
+                    translated = frames.wrapJump(i, insn.label, gotoStatement, translated, exceptions);
+                    translated = structurer.replaceJump(i, insn.label, gotoStatement, translated);
+                    if (structurer.ifAt(i) != null) {
+                        translated = openIf(translated, gotoStatement);
+                    } else if (structurer.isElseGoto(i)) {
+                        translated = null;
+                    }
+                }
+                if (LoopAnalyzer.targets(insn).size() > 0) {
+                    spillStack(stack, insn.stackTypes, code);
+                }
 
                 if (translated != null && !translated.isEmpty()) {
                     code.append("    ").append(translated).append("\n");
-                    needsSemicolon = false;
+                }
+                frames.writeFallthroughExit(i, insn, code);
+
+                if (LoopAnalyzer.endsBlock(insn.opcode)) {
+                    stack.clear();
+                    reachable = false;
                 }
             }
 
-            if (needsSemicolon) {
-                code.append("    ;\n");
+            closeRegions(bodyInfo.instructions.size(), null, reachable, stack, code);
+            code.append("    }\n");
+            code.append("    ").append(defaultReturn(returnType)).append("\n");
+            writeDispatches(code, labels, returnType);
+            removeUnusedLabels(code);
+
+            StringBuilder header = new StringBuilder();
+            for (String declaration : declarations.values()) {
+                header.append("    ").append(declaration).append("\n");
             }
+            hoister.writeDeclarations(header);
+            code.insert(0, header);
 
         } catch (Exception e) {
             Logger.error("Bytecode translation error: " + e.getMessage());
             e.printStackTrace();
             code.append("    // Translation error: ").append(e.getMessage()).append("\n");
+            code.append("    ").append(defaultReturn(returnType)).append("\n");
         }
 
-        String returnType = typeMapper.getReturnType(method.getDescriptor());
-        if (!returnType.equals("void") && !stack.isEmpty()) {
-            String retVal = stack.pop();
-            String jniRet = jniHelper.convertToJniReturn(retVal, returnType, code);
-            code.append("    return ").append(jniRet).append(";\n");
-        } else if (!returnType.equals("void")) {
-            code.append("    return ").append(typeMapper.getDefaultValue(returnType)).append(";\n");
+        if (pinning != null) {
+            String wrapped = pinning.wrap(code.toString(), typeMapper.mapJavaTypeToCpp(returnType),
+                    typeMapper.getDefaultValue(returnType), registry);
+            pinning = null;
+            return wrapped;
         }
 
         return code.toString();
     }
 
+    private BitSet skippedInstructions(MethodBodyInfo bodyInfo) {
+        BitSet skipped = new BitSet();
+        for (int i = 0; i < bodyInfo.instructions.size(); i++) {
+            if (boxing.pairEnd(i) >= 0) {
+                skipped.set(i, boxing.pairEnd(i) + 1);
+            }
+        }
+        return skipped;
+    }
+
+    private boolean closeRegions(int index, String stackTypes, boolean reachable,
+                                 Stack<String> stack, StringBuilder code) {
+        List<ControlFlowStructurer.Region> closed = structurer.closing(index);
+        if (closed.isEmpty()) {
+            return false;
+        }
+
+        if (reachable) {
+            spillStack(stack, stackTypes, code);
+        }
+        for (ControlFlowStructurer.Region region : closed) {
+            if (region.kind == ControlFlowStructurer.Kind.LOOP && reachable) {
+                code.append("    break;\n");
+            }
+            code.append("    }\n    }\n");
+        }
+        if (structurer.elseAt(index) != null) {
+            code.append("    else {\n    {\n");
+        }
+        restoreStack(stack, stackTypes);
+        return true;
+    }
+
+    private String openIf(String translated, String gotoStatement) {
+        String prefix = "if (";
+        String suffix = ") " + gotoStatement;
+        if (translated != null && translated.startsWith(prefix) && translated.endsWith(suffix)) {
+            String condition = translated.substring(prefix.length(), translated.length() - suffix.length());
+            return "if (!(" + condition + ")) {\n    {";
+        }
+        return (translated != null ? translated + "\n    " : "") + "{\n    {";
+    }
+
+    private void removeUnusedLabels(StringBuilder code) {
+        Set<String> used = new HashSet<>();
+        Matcher jump = GOTO_LABEL.matcher(code);
+        while (jump.find()) {
+            used.add(jump.group(1));
+        }
+
+        Matcher label = LABEL_LINE.matcher(code);
+        StringBuilder result = new StringBuilder();
+        while (label.find()) {
+            label.appendReplacement(result, used.contains(label.group(1)) ? "$0" : "");
+        }
+        label.appendTail(result);
+        code.setLength(0);
+        code.append(result);
+    }
+
+    private String defaultReturn(String returnType) {
+        return returnType.equals("void") ? "return;" : "return " + typeMapper.getDefaultValue(returnType) + ";";
+    }
+
+    private void writeDispatches(StringBuilder code, Map<Label, String> labels, String returnType) {
+        for (ExceptionDispatch.Dispatch dispatch : exceptions.dispatches()) {
+            code.append(dispatch.label).append(":\n");
+            if (!dispatch.handlers.isEmpty()) {
+                String exception = dispatch.label + "_ex";
+                String slot = declare("stack_0_a", 'A');
+                code.append("    {\n");
+                code.append("    jthrowable ").append(exception).append(" = env->ExceptionOccurred();\n");
+                code.append("    env->ExceptionClear();\n");
+                for (TryCatchInfo handler : dispatch.handlers) {
+                    String jump = "{ " + slot + " = " + exception + "; goto "
+                            + getOrCreateLabel(handler.handler, labels) + "; }";
+                    if (handler.type == null) {
+                        code.append("    ").append(jump).append("\n");
+                        break;
+                    }
+                    code.append("    if (j2c_catches(env, ").append(exception).append(", ")
+                            .append(registry.classRef(handler.type)).append(")) ").append(jump).append("\n");
+                }
+                code.append("    env->Throw(").append(exception).append(");\n");
+                code.append("    }\n");
+            }
+            for (int i = 0; i < dispatch.framePops; i++) {
+                code.append("    env->PopLocalFrame(nullptr);\n");
+            }
+            code.append("    ").append(defaultReturn(returnType)).append("\n");
+        }
+    }
+
+    private String throwNew(String exceptionClass, String message) {
+        return "{ env->ThrowNew(" + registry.classRef(exceptionClass) + ", "
+                + (message != null ? JniHelper.cString(message) : "nullptr") + "); goto "
+                + exceptions.target() + "; }";
+    }
+
+    private static boolean storesTo(MethodBodyInfo body, int slot) {
+        for (InstructionInfo insn : body.instructions) {
+            if (insn.opcode == Opcodes.ASTORE && insn.var == slot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void appendNullCheck(String value, StringBuilder code) {
+        if (nonNull.contains(value) || value.startsWith("j2c_string(")) {
+            return;
+        }
+        if (nullChecks.isRedundant(nullCheckPosition)) {
+            eliminatedNullChecks++;
+            return;
+        }
+        code.append("    if (J2C_UNLIKELY(").append(value).append(" == nullptr)) ")
+                .append(throwNew("java/lang/NullPointerException", null)).append("\n");
+    }
+
+    private String variableName(InstructionInfo insn, char type, Map<Integer, String> locals) {
+        VariableCoalescing.Variable variable = localPrefix.equals(LOCAL_PREFIX) ? variables.variable(insn) : null;
+        if (variable == null) {
+            return localName(insn.var, type, locals);
+        }
+        return declare(LOCAL_PREFIX + variable.slot + "_" + Character.toLowerCase(variable.type)
+                + (variable.index > 0 ? "_" + variable.index : ""), variable.type);
+    }
+
+    private String localName(int slot, char type, Map<Integer, String> locals) {
+        String param = locals.get(slot);
+        if (param != null && paramSlotTypes.get(slot) == type) {
+            return param;
+        }
+        return declare(localPrefix + slot + "_" + Character.toLowerCase(type), type);
+    }
+
+    private String ownedFlag(int slot, Map<Integer, String> locals) {
+        return declare(localName(slot, 'A', locals) + "_owned", 'I');
+    }
+
+    private boolean inlineCall(InstructionInfo insn, Stack<String> stack, StringBuilder code,
+                               Map<Label, String> labels) {
+        MethodBodyInfo callee = inliner.resolve(insn, currentClass);
+        Type[] argumentTypes = Type.getArgumentTypes(insn.descriptor);
+        boolean hasReceiver = insn.opcode != Opcodes.INVOKESTATIC;
+        if (callee == null || stack.size() < argumentTypes.length + (hasReceiver ? 1 : 0)) {
+            return false;
+        }
+
+        String savedPrefix = localPrefix;
+        localPrefix = "inline_" + (inlineCounter++) + "_";
+        Map<Integer, String> calleeLocals = new HashMap<>();
+
+        List<String> assignments = new ArrayList<>();
+        int slot = hasReceiver ? 1 : 0;
+        for (Type argumentType : argumentTypes) {
+            slot += argumentType.getSize();
+        }
+        for (int i = argumentTypes.length - 1; i >= 0; i--) {
+            slot -= argumentTypes[i].getSize();
+            assignments.add(0, localName(slot, slotType(argumentTypes[i]), calleeLocals) + " = " + stack.pop() + ";");
+        }
+        String receiver = hasReceiver ? stack.pop() : null;
+        if (receiver != null) {
+            String self = localName(0, 'A', calleeLocals);
+            assignments.add(0, self + " = " + receiver + ";");
+            appendNullCheck(receiver, code);
+            if (!storesTo(callee, 0)) {
+                nonNull.add(self);
+            }
+        }
+        for (String assignment : assignments) {
+            code.append("    ").append(assignment).append("\n");
+        }
+        int savedPosition = nullCheckPosition;
+        nullCheckPosition = -1;
+
+        for (InstructionInfo calleeInsn : callee.instructions) {
+            if (calleeInsn.opcode == -1) {
+                continue;
+            }
+            if (calleeInsn.opcode >= Opcodes.IRETURN && calleeInsn.opcode <= Opcodes.RETURN) {
+                break;
+            }
+            String translated = translateInstruction(calleeInsn, stack, calleeLocals, code, labels);
+            if (translated != null && !translated.isEmpty()) {
+                code.append("    ").append(translated).append("\n");
+            }
+        }
+
+        localPrefix = savedPrefix;
+        nullCheckPosition = savedPosition;
+        return true;
+    }
+
+    private String declare(String name, char type) {
+        declarations.computeIfAbsent(name, n -> slotCppType(type) + " " + n + " = " + slotDefault(type) + ";");
+        return name;
+    }
+
+    private void spillStack(Stack<String> stack, String stackTypes, StringBuilder code) {
+        if (stackTypes == null) {
+            return;
+        }
+        for (int depth = 0; depth < stack.size() && depth < stackTypes.length(); depth++) {
+            String target = declare("stack_" + depth + "_" + Character.toLowerCase(stackTypes.charAt(depth)),
+                    stackTypes.charAt(depth));
+            if (!stack.get(depth).equals(target)) {
+                code.append("    ").append(target).append(" = ").append(stack.get(depth)).append(";\n");
+            }
+        }
+    }
+
+    private void restoreStack(Stack<String> stack, String stackTypes) {
+        stack.clear();
+        if (stackTypes == null) {
+            return;
+        }
+        for (int depth = 0; depth < stackTypes.length(); depth++) {
+            stack.push(declare("stack_" + depth + "_" + Character.toLowerCase(stackTypes.charAt(depth)),
+                    stackTypes.charAt(depth)));
+        }
+    }
+
+    private boolean snapshotLocal(String name, Stack<String> stack, StringBuilder code) {
+        String snapshot = null;
+        for (int depth = 0; depth < stack.size(); depth++) {
+            if (findToken(stack.get(depth), name, 0) >= 0) {
+                if (snapshot == null) {
+                    snapshot = "temp_" + (tempVarCounter++);
+                    code.append("    auto ").append(snapshot).append(" = ").append(name).append(";\n");
+                }
+                stack.set(depth, replaceToken(stack.get(depth), name, snapshot));
+            }
+        }
+        return snapshot != null;
+    }
+
+    private static String replaceToken(String text, String token, String replacement) {
+        StringBuilder result = new StringBuilder();
+        int from = 0;
+        for (int at = findToken(text, token, 0); at >= 0; at = findToken(text, token, from)) {
+            result.append(text, from, at).append(replacement);
+            from = at + token.length();
+        }
+        return result.append(text.substring(from)).toString();
+    }
+
+    private static int findToken(String text, String token, int from) {
+        for (int at = text.indexOf(token, from); at >= 0; at = text.indexOf(token, at + 1)) {
+            int end = at + token.length();
+            if ((at == 0 || !isWordChar(text.charAt(at - 1)))
+                    && (end == text.length() || !isWordChar(text.charAt(end)))) {
+                return at;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWordChar(char c) {
+        return c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static char slotType(Type type) {
+        return switch (type.getSort()) {
+            case Type.LONG -> 'J';
+            case Type.FLOAT -> 'F';
+            case Type.DOUBLE -> 'D';
+            case Type.OBJECT, Type.ARRAY -> 'A';
+            default -> 'I';
+        };
+    }
+
+    private static char slotType(int opcode) {
+        return switch (opcode) {
+            case Opcodes.LLOAD, Opcodes.LSTORE -> 'J';
+            case Opcodes.FLOAD, Opcodes.FSTORE -> 'F';
+            case Opcodes.DLOAD, Opcodes.DSTORE -> 'D';
+            case Opcodes.ALOAD, Opcodes.ASTORE -> 'A';
+            default -> 'I';
+        };
+    }
+
+    private static String slotCppType(char type) {
+        return switch (type) {
+            case 'J' -> "jlong";
+            case 'F' -> "jfloat";
+            case 'D' -> "jdouble";
+            case 'A' -> "jobject";
+            default -> "jint";
+        };
+    }
+
+    private static String slotDefault(char type) {
+        return switch (type) {
+            case 'J' -> "0LL";
+            case 'F' -> "0.0f";
+            case 'D' -> "0.0";
+            case 'A' -> "nullptr";
+            default -> "0";
+        };
+    }
 
     private String translateInstruction(InstructionInfo insn, Stack<String> stack,
                                         Map<Integer, String> locals, StringBuilder code,
-                                        Map<String, String> labels) {
+                                        Map<Label, String> labels) {
         if (insn.opcode == -1) {
             if ("LABEL".equals(insn.type)) {
                 return null;
@@ -141,17 +582,31 @@ public class BytecodeTranslator {
 
             case Opcodes.ILOAD: case Opcodes.LLOAD: case Opcodes.FLOAD:
             case Opcodes.DLOAD: case Opcodes.ALOAD:
-                String localVar = locals.getOrDefault(insn.var, "local_" + insn.var);
-                stack.push(localVar);
+                stack.push(variableName(insn, slotType(insn.opcode), locals));
                 return null;
 
             case Opcodes.ISTORE: case Opcodes.LSTORE: case Opcodes.FSTORE:
             case Opcodes.DSTORE: case Opcodes.ASTORE:
                 if (stack.isEmpty()) return "// Stack underflow at STORE";
                 String value = stack.pop();
-                String varName = "local_" + insn.var;
-                locals.put(insn.var, varName);
-                return "auto " + varName + " = " + value + ";";
+                boolean fresh = ownedRefs.remove(value) && !stack.contains(value);
+                String varName = variableName(insn, slotType(insn.opcode), locals);
+                if (insn.opcode != Opcodes.ASTORE && varName.equals(value)) {
+                    coalescedCopies++;
+                    return null;
+                }
+                boolean copied = snapshotLocal(varName, stack, code);
+                if (insn.opcode == Opcodes.ASTORE && localPrefix.equals(LOCAL_PREFIX) && frames.recycles(insn.var)) {
+                    String owned = ownedFlag(insn.var, locals);
+                    if (!copied) {
+                        code.append("    if (").append(owned).append(") env->DeleteLocalRef(").append(varName).append(");\n");
+                    }
+                    code.append("    ").append(owned).append(" = ").append(fresh ? 1 : 0).append(";\n");
+                }
+                if (insn.opcode == Opcodes.ASTORE && locals.containsKey(insn.var)) {
+                    return varName + " = (decltype(" + varName + "))" + value + ";";
+                }
+                return varName + " = " + value + ";";
 
             case Opcodes.IALOAD: case Opcodes.LALOAD: case Opcodes.FALOAD:
             case Opcodes.DALOAD: case Opcodes.AALOAD: case Opcodes.BALOAD:
@@ -163,23 +618,31 @@ public class BytecodeTranslator {
             case Opcodes.CASTORE: case Opcodes.SASTORE:
                 return handleArrayStore(insn.opcode, stack, code);
 
-            case Opcodes.IADD: case Opcodes.LADD: case Opcodes.FADD: case Opcodes.DADD:
+            case Opcodes.IADD: return handleWrapping(stack, code, "j2c_iadd");
+            case Opcodes.LADD: return handleWrapping(stack, code, "j2c_ladd");
+            case Opcodes.ISUB: return handleWrapping(stack, code, "j2c_isub");
+            case Opcodes.LSUB: return handleWrapping(stack, code, "j2c_lsub");
+            case Opcodes.IMUL: return handleWrapping(stack, code, "j2c_imul");
+            case Opcodes.LMUL: return handleWrapping(stack, code, "j2c_lmul");
+            case Opcodes.FADD: case Opcodes.DADD:
                 return handleBinaryOp(stack, code, "+");
-            case Opcodes.ISUB: case Opcodes.LSUB: case Opcodes.FSUB: case Opcodes.DSUB:
+            case Opcodes.FSUB: case Opcodes.DSUB:
                 return handleBinaryOp(stack, code, "-");
-            case Opcodes.IMUL: case Opcodes.LMUL: case Opcodes.FMUL: case Opcodes.DMUL:
+            case Opcodes.FMUL: case Opcodes.DMUL:
                 return handleBinaryOp(stack, code, "*");
-            case Opcodes.IDIV: case Opcodes.LDIV: case Opcodes.FDIV: case Opcodes.DDIV:
+            case Opcodes.FDIV: case Opcodes.DDIV:
                 return handleBinaryOp(stack, code, "/");
-            case Opcodes.IREM: case Opcodes.LREM: case Opcodes.FREM: case Opcodes.DREM:
-                return handleBinaryOp(stack, code, "%");
-
-            case Opcodes.ISHL: case Opcodes.LSHL:
-                return handleBinaryOp(stack, code, "<<");
-            case Opcodes.ISHR: case Opcodes.LSHR:
-                return handleBinaryOp(stack, code, ">>");
-            case Opcodes.IUSHR: case Opcodes.LUSHR:
-                return handleBinaryOp(stack, code, ">>>");
+            case Opcodes.IDIV: case Opcodes.LDIV: case Opcodes.IREM: case Opcodes.LREM:
+                return handleIntegerDivision(insn.opcode, stack, code);
+            case Opcodes.FREM: case Opcodes.DREM:
+                return handleBinaryOp(stack, code, "fmod");
+
+            case Opcodes.ISHL: return handleWrapping(stack, code, "j2c_ishl");
+            case Opcodes.LSHL: return handleWrapping(stack, code, "j2c_lshl");
+            case Opcodes.ISHR: return handleWrapping(stack, code, "j2c_ishr");
+            case Opcodes.LSHR: return handleWrapping(stack, code, "j2c_lshr");
+            case Opcodes.IUSHR: return handleWrapping(stack, code, "j2c_iushr");
+            case Opcodes.LUSHR: return handleWrapping(stack, code, "j2c_lushr");
 
             case Opcodes.IAND: case Opcodes.LAND:
                 return handleBinaryOp(stack, code, "&");
@@ -188,12 +651,15 @@ public class BytecodeTranslator {
             case Opcodes.IXOR: case Opcodes.LXOR:
                 return handleBinaryOp(stack, code, "^");
 
-            case Opcodes.INEG: case Opcodes.LNEG: case Opcodes.FNEG: case Opcodes.DNEG:
+            case Opcodes.INEG: return handleUnaryOp(stack, code, "j2c_ineg");
+            case Opcodes.LNEG: return handleUnaryOp(stack, code, "j2c_lneg");
+            case Opcodes.FNEG: case Opcodes.DNEG:
                 return handleUnaryOp(stack, code, "-");
 
             case Opcodes.IINC:
-                String incVar = locals.getOrDefault(insn.var, "local_" + insn.var);
-                return incVar + " += " + insn.increment + ";";
+                String incVar = variableName(insn, 'I', locals);
+                snapshotLocal(incVar, stack, code);
+                return incVar + " = j2c_iadd(" + incVar + ", " + insn.increment + ");";
 
             case Opcodes.I2L: return handleConversion(stack, code, "(jlong)");
             case Opcodes.I2F: return handleConversion(stack, code, "(jfloat)");
@@ -220,6 +686,7 @@ public class BytecodeTranslator {
 
             case Opcodes.IFEQ: case Opcodes.IFNE: case Opcodes.IFLT:
             case Opcodes.IFGE: case Opcodes.IFGT: case Opcodes.IFLE:
+            case Opcodes.IFNULL: case Opcodes.IFNONNULL:
                 return handleIfCondition(insn, stack, code, labels);
 
             case Opcodes.IF_ICMPEQ: case Opcodes.IF_ICMPNE: case Opcodes.IF_ICMPLT:
@@ -244,12 +711,15 @@ public class BytecodeTranslator {
                 return handlePutField(insn, stack, code);
 
             case Opcodes.INVOKEVIRTUAL:
+                if (inlineCall(insn, stack, code, labels)) return null;
                 return handleInvokeVirtual(insn, stack, code);
 
             case Opcodes.INVOKESPECIAL:
+                if (inlineCall(insn, stack, code, labels)) return null;
                 return handleInvokeSpecial(insn, stack, code);
 
             case Opcodes.INVOKESTATIC:
+                if (inlineCall(insn, stack, code, labels)) return null;
                 return handleInvokeStatic(insn, stack, code);
 
             case Opcodes.INVOKEINTERFACE:
@@ -277,31 +747,37 @@ public class BytecodeTranslator {
                 return handleInstanceOf(insn, stack, code);
 
             case Opcodes.MONITORENTER:
-                if (!stack.isEmpty()) stack.pop();
-                return "// MONITORENTER";
-
             case Opcodes.MONITOREXIT:
-                if (!stack.isEmpty()) stack.pop();
-                return "// MONITOREXIT";
+                return handleMonitor(insn.opcode, stack, code);
 
             case Opcodes.RETURN:
-                return null;
+                return "return;";
 
             case Opcodes.IRETURN:
             case Opcodes.LRETURN:
             case Opcodes.FRETURN:
             case Opcodes.DRETURN:
             case Opcodes.ARETURN:
-                return null;
+                if (stack.isEmpty()) return "// Stack underflow at RETURN";
+                String result = "(" + stack.pop() + ")";
+                String converted = jniHelper.convertToJniReturn(result, methodReturnType, code);
+                if (converted.equals(result)) {
+                    converted = "(" + typeMapper.mapJavaTypeToCpp(methodReturnType) + ")" + result;
+                }
+                return "return " + converted + ";";
 
             case Opcodes.POP:
-                if (!stack.isEmpty()) stack.pop();
+                if (!stack.isEmpty()) return releaseIfDead(stack.pop(), stack);
                 return null;
 
             case Opcodes.POP2:
-                if (!stack.isEmpty()) stack.pop();
-                if (!stack.isEmpty()) stack.pop();
-                return null;
+                String released = null;
+                if (!stack.isEmpty()) released = releaseIfDead(stack.pop(), stack);
+                if (!stack.isEmpty()) {
+                    String second = releaseIfDead(stack.pop(), stack);
+                    if (second != null) released = released != null ? released + " " + second : second;
+                }
+                return released;
 
             case Opcodes.DUP:
                 if (!stack.isEmpty()) stack.push(stack.peek());
@@ -354,18 +830,17 @@ public class BytecodeTranslator {
         }
     }
 
+    private String releaseIfDead(String value, Stack<String> stack) {
+        if (!ownedRefs.contains(value) || stack.contains(value)) {
+            return null;
+        }
+        ownedRefs.remove(value);
+        return "env->DeleteLocalRef(" + value + ");";
+    }
+
     private String handleLdc(InstructionInfo insn, Stack<String> stack, StringBuilder code) {
         if (insn.constant instanceof String) {
-            String escaped = ((String) insn.constant)
-                    .replace("\\", "\\\\")
-                    .replace("\"", "\\\"")
-                    .replace("\n", "\\n")
-                    .replace("\r", "\\r")
-                    .replace("\t", "\\t");
-            String tempVar = "jstr_" + (tempVarCounter++);
-            code.append("    jstring ").append(tempVar)
-                    .append(" = env->NewStringUTF(\"").append(escaped).append("\");\n");
-            stack.push(tempVar);
+            stack.push(registry.stringRef((String) insn.constant));
         } else if (insn.constant instanceof Integer) {
             stack.push("(jint)" + insn.constant);
         } else if (insn.constant instanceof Long) {
@@ -374,12 +849,12 @@ public class BytecodeTranslator {
             stack.push("(jfloat)" + insn.constant + "f");
         } else if (insn.constant instanceof Double) {
             stack.push("(jdouble)" + insn.constant);
-        } else if (insn.constant instanceof org.objectweb.asm.Type) {
-            org.objectweb.asm.Type type = (org.objectweb.asm.Type) insn.constant;
+        } else if (insn.constant instanceof Type) {
+            Type type = (Type) insn.constant;
             String className = type.getClassName().replace('.', '/');
             String tempVar = "jclass_" + (tempVarCounter++);
             code.append("    jclass ").append(tempVar)
-                    .append(" = env->FindClass(\"").append(className).append("\");\n");
+                    .append(" = ").append(registry.classRef(className)).append(";\n");
             stack.push(tempVar);
         } else {
             stack.push("nullptr");
@@ -391,11 +866,15 @@ public class BytecodeTranslator {
         if (stack.size() < 2) return "// Stack underflow at " + op;
         String b = stack.pop();
         String a = stack.pop();
+        if (!op.equals("fmod") && isAtom(a) && isAtom(b)) {
+            stack.push("(" + a + " " + op + " " + b + ")");
+            return null;
+        }
         String resultVar = "temp_" + (tempVarCounter++);
 
-        if (op.equals(">>>")) {
-            code.append("    auto ").append(resultVar).append(" = (unsigned)")
-                    .append(a).append(" >> ").append(b).append(";\n");
+        if (op.equals("fmod")) {
+            code.append("    auto ").append(resultVar).append(" = std::fmod(")
+                    .append(a).append(", ").append(b).append(");\n");
         } else {
             code.append("    auto ").append(resultVar).append(" = ")
                     .append(a).append(" ").append(op).append(" ").append(b).append(";\n");
@@ -404,11 +883,55 @@ public class BytecodeTranslator {
         return null;
     }
 
+    private static boolean isAtom(String value) {
+        return !value.startsWith("stack_") && ATOM.matcher(value).matches();
+    }
+
+    private String handleIntegerDivision(int opcode, Stack<String> stack, StringBuilder code) {
+        if (stack.size() < 2) return "// Stack underflow at DIV";
+        String b = stack.pop();
+        String a = stack.pop();
+        String resultVar = "temp_" + (tempVarCounter++);
+        boolean isLong = opcode == Opcodes.LDIV || opcode == Opcodes.LREM;
+        boolean isRem = opcode == Opcodes.IREM || opcode == Opcodes.LREM;
+
+        if (pinning != null) {
+            code.append(pinning.divisionCheck(b, pinReturnDefault));
+        } else {
+            code.append("    if (J2C_UNLIKELY(").append(b).append(" == 0)) ")
+                    .append(throwNew("java/lang/ArithmeticException", "/ by zero")).append("\n");
+        }
+
+        String type = isLong ? "jlong" : "jint";
+        String negated = isLong ? "(jlong)(0ULL - (unsigned long long)" + a + ")" : "(jint)(0U - (unsigned int)" + a + ")";
+        code.append("    ").append(type).append(" ").append(resultVar).append(" = ").append(b).append(" == -1 ? ")
+                .append(isRem ? "0" : negated).append(" : ").append(a).append(isRem ? " % " : " / ")
+                .append(b).append(";\n");
+        stack.push(resultVar);
+        return null;
+    }
+
+    private String handleWrapping(Stack<String> stack, StringBuilder code, String function) {
+        if (stack.size() < 2) return "// Stack underflow at " + function;
+        String b = stack.pop();
+        String a = stack.pop();
+        String call = function + "(" + a + ", " + b + ")";
+        if (isAtom(a) && isAtom(b)) {
+            stack.push(call);
+            return null;
+        }
+        String resultVar = "temp_" + (tempVarCounter++);
+        code.append("    auto ").append(resultVar).append(" = ").append(call).append(";\n");
+        stack.push(resultVar);
+        return null;
+    }
+
     private String handleUnaryOp(Stack<String> stack, StringBuilder code, String op) {
         if (stack.isEmpty()) return "// Stack underflow at unary " + op;
         String val = stack.pop();
         String resultVar = "temp_" + (tempVarCounter++);
-        code.append("    auto ").append(resultVar).append(" = ").append(op).append(val).append(";\n");
+        String expression = op.startsWith("j2c_") ? op + "(" + val + ")" : op + val;
+        code.append("    auto ").append(resultVar).append(" = ").append(expression).append(";\n");
         stack.push(resultVar);
         return null;
     }
@@ -434,17 +957,17 @@ public class BytecodeTranslator {
         return null;
     }
 
-    private String getOrCreateLabel(org.objectweb.asm.Label label, Map<String, String> labels) {
-        String labelName = labels.get(label.toString());
+    private String getOrCreateLabel(Label label, Map<Label, String> labels) {
+        String labelName = labels.get(label);
         if (labelName == null) {
             labelName = "label_" + (labelCounter++);
-            labels.put(label.toString(), labelName);
+            labels.put(label, labelName);
         }
         return labelName;
     }
 
     private String handleIfCondition(InstructionInfo insn, Stack<String> stack,
-                                     StringBuilder code, Map<String, String> labels) {
+                                     StringBuilder code, Map<Label, String> labels) {
         if (stack.isEmpty()) return "// Stack underflow at IF";
         String val = stack.pop();
         String labelName = getOrCreateLabel(insn.label, labels);
@@ -456,6 +979,8 @@ public class BytecodeTranslator {
             case Opcodes.IFGE -> val + " >= 0";
             case Opcodes.IFGT -> val + " > 0";
             case Opcodes.IFLE -> val + " <= 0";
+            case Opcodes.IFNULL -> val + " == nullptr";
+            case Opcodes.IFNONNULL -> val + " != nullptr";
             default -> "false";
         };
 
@@ -463,15 +988,17 @@ public class BytecodeTranslator {
     }
 
     private String handleIfCompare(InstructionInfo insn, Stack<String> stack,
-                                   StringBuilder code, Map<String, String> labels) {
+                                   StringBuilder code, Map<Label, String> labels) {
         if (stack.size() < 2) return "// Stack underflow at IF_CMP";
         String b = stack.pop();
         String a = stack.pop();
         String labelName = getOrCreateLabel(insn.label, labels);
 
         String condition = switch (insn.opcode) {
-            case Opcodes.IF_ICMPEQ, Opcodes.IF_ACMPEQ -> a + " == " + b;
-            case Opcodes.IF_ICMPNE, Opcodes.IF_ACMPNE -> a + " != " + b;
+            case Opcodes.IF_ICMPEQ -> a + " == " + b;
+            case Opcodes.IF_ICMPNE -> a + " != " + b;
+            case Opcodes.IF_ACMPEQ -> "env->IsSameObject(" + a + ", " + b + ")";
+            case Opcodes.IF_ACMPNE -> "!env->IsSameObject(" + a + ", " + b + ")";
             case Opcodes.IF_ICMPLT -> a + " < " + b;
             case Opcodes.IF_ICMPGE -> a + " >= " + b;
             case Opcodes.IF_ICMPGT -> a + " > " + b;
@@ -483,28 +1010,19 @@ public class BytecodeTranslator {
     }
     private String handleGetStatic(InstructionInfo insn, Stack<String> stack, StringBuilder code) {
         String fieldVar = "field_" + (tempVarCounter++);
-        String javaClassName = insn.owner;
         int currentTemp = tempVarCounter++;
+        String javaType = typeMapper.parseType(insn.descriptor);
 
-        code.append("    jclass cls_").append(currentTemp).append(" = env->FindClass(\"")
-                .append(javaClassName).append("\");\n");
-        code.append("    jobject ").append(fieldVar).append(" = nullptr;\n");
-        code.append("    if (cls_").append(currentTemp).append(" == nullptr) {\n");
-        code.append("        if (env->ExceptionCheck()) env->ExceptionDescribe();\n");
-        code.append("    } else {\n");
-
-        code.append("        jfieldID fid_").append(currentTemp).append(" = env->GetStaticFieldID(cls_")
-                .append(currentTemp).append(", \"").append(insn.name)
-                .append("\", \"").append(insn.descriptor).append("\");\n");
-        code.append("        if (fid_").append(currentTemp).append(" == nullptr) {\n");
-        code.append("            if (env->ExceptionCheck()) env->ExceptionDescribe();\n");
-        code.append("        } else {\n");
+        code.append("    jfieldID fid_").append(currentTemp).append(" = ")
+                .append(registry.fieldRef(insn.owner, insn.name, insn.descriptor, true)).append(";\n");
+        code.append("    if (J2C_UNLIKELY(fid_").append(currentTemp).append(" == nullptr)) goto ")
+                .append(exceptions.target()).append(";\n");
 
         String getMethod = jniHelper.getStaticFieldMethod(insn.descriptor);
-        code.append("            ").append(fieldVar).append(" = env->").append(getMethod)
-                .append("(cls_").append(currentTemp).append(", fid_").append(currentTemp).append(");\n");
-        code.append("        }\n");
-        code.append("    }\n");
+        code.append("    ").append(typeMapper.mapJavaTypeToCpp(javaType)).append(" ").append(fieldVar)
+                .append(" = env->").append(getMethod)
+                .append("(").append(registry.classRef(insn.owner))
+                .append(", fid_").append(currentTemp).append(");\n");
 
         stack.push(fieldVar);
         return null;
@@ -513,17 +1031,15 @@ public class BytecodeTranslator {
     private String handlePutStatic(InstructionInfo insn, Stack<String> stack, StringBuilder code) {
         if (stack.isEmpty()) return "// Stack underflow at PUTSTATIC";
         String value = stack.pop();
-        String javaClassName = insn.owner;
         int currentTemp = tempVarCounter++;
 
-        code.append("    jclass cls_").append(currentTemp).append(" = env->FindClass(\"")
-                .append(javaClassName).append("\");\n");
-        code.append("    jfieldID fid_").append(currentTemp).append(" = env->GetStaticFieldID(cls_")
-                .append(currentTemp).append(", \"").append(insn.name)
-                .append("\", \"").append(insn.descriptor).append("\");\n");
+        code.append("    jfieldID fid_").append(currentTemp).append(" = ")
+                .append(registry.fieldRef(insn.owner, insn.name, insn.descriptor, true)).append(";\n");
+        code.append("    if (J2C_UNLIKELY(fid_").append(currentTemp).append(" == nullptr)) goto ")
+                .append(exceptions.target()).append(";\n");
 
         String setMethod = jniHelper.setStaticFieldMethod(insn.descriptor);
-        code.append("    env->").append(setMethod).append("(cls_").append(currentTemp)
+        code.append("    env->").append(setMethod).append("(").append(registry.classRef(insn.owner))
                 .append(", fid_").append(currentTemp).append(", ").append(value).append(");\n");
 
         return null;
@@ -533,36 +1049,19 @@ public class BytecodeTranslator {
         if (stack.isEmpty()) return "// Stack underflow at GETFIELD";
         String obj = stack.pop();
         String fieldVar = "field_" + (tempVarCounter++);
-        String javaClassName = insn.owner;
         int currentTemp = tempVarCounter++;
+        String javaType = typeMapper.parseType(insn.descriptor);
 
-        String cppType = typeMapper.mapJavaTypeToCpp(
-                typeMapper.parseType(insn.descriptor)
-        );
-        code.append("    ").append(cppType).append(" ").append(fieldVar)
-                .append(" = ").append(typeMapper.getDefaultValue(
-                        typeMapper.parseType(insn.descriptor)
-                )).append(";\n");
-
-        code.append("    if (").append(obj).append(" != nullptr) {\n");
-        code.append("        jclass cls_").append(currentTemp).append(" = env->GetObjectClass(")
-                .append(obj).append(");\n");
-        code.append("        if (cls_").append(currentTemp).append(" != nullptr) {\n");
-
-        code.append("            jfieldID fid_").append(currentTemp).append(" = env->GetFieldID(cls_")
-                .append(currentTemp).append(", \"").append(insn.name)
-                .append("\", \"").append(insn.descriptor).append("\");\n");
-        code.append("            if (fid_").append(currentTemp).append(" != nullptr) {\n");
+        appendNullCheck(obj, code);
+        code.append("    jfieldID fid_").append(currentTemp).append(" = ")
+                .append(registry.fieldRef(insn.owner, insn.name, insn.descriptor, false)).append(";\n");
+        code.append("    if (J2C_UNLIKELY(fid_").append(currentTemp).append(" == nullptr)) goto ")
+                .append(exceptions.target()).append(";\n");
 
         String getMethod = jniHelper.getFieldMethod(insn.descriptor);
-        code.append("                ").append(fieldVar).append(" = env->").append(getMethod)
+        code.append("    ").append(typeMapper.mapJavaTypeToCpp(javaType)).append(" ").append(fieldVar)
+                .append(" = env->").append(getMethod)
                 .append("(").append(obj).append(", fid_").append(currentTemp).append(");\n");
-        code.append("            } else if (env->ExceptionCheck()) {\n");
-        code.append("                env->ExceptionDescribe();\n");
-        code.append("                env->ExceptionClear();\n");
-        code.append("            }\n");
-        code.append("        }\n");
-        code.append("    }\n");
 
         stack.push(fieldVar);
         return null;
@@ -574,11 +1073,11 @@ public class BytecodeTranslator {
         String obj = stack.pop();
         int currentTemp = tempVarCounter++;
 
-        code.append("    jclass cls_").append(currentTemp).append(" = env->GetObjectClass(")
-                .append(obj).append(");\n");
-        code.append("    jfieldID fid_").append(currentTemp).append(" = env->GetFieldID(cls_")
-                .append(currentTemp).append(", \"").append(insn.name)
-                .append("\", \"").append(insn.descriptor).append("\");\n");
+        appendNullCheck(obj, code);
+        code.append("    jfieldID fid_").append(currentTemp).append(" = ")
+                .append(registry.fieldRef(insn.owner, insn.name, insn.descriptor, false)).append(";\n");
+        code.append("    if (J2C_UNLIKELY(fid_").append(currentTemp).append(" == nullptr)) goto ")
+                .append(exceptions.target()).append(";\n");
 
         String setMethod = jniHelper.setFieldMethod(insn.descriptor);
         code.append("    env->").append(setMethod).append("(").append(obj)
@@ -597,71 +1096,15 @@ public class BytecodeTranslator {
         }
         String obj = stack.pop();
 
-        String returnType = typeMapper.getReturnType(insn.descriptor);
-        int currentTemp = tempVarCounter++;
-        boolean isVoidMethod = returnType.equals("void");
-
-        String resultVar = null;
-        if (!isVoidMethod) {
-            resultVar = "result_" + tempVarCounter++;
-            String cppType = typeMapper.mapJavaTypeToCpp(returnType);
-            code.append("    ").append(cppType).append(" ").append(resultVar)
-                    .append(" = ").append(typeMapper.getDefaultValue(returnType)).append(";\n");
-        }
-
-        code.append("    if (").append(obj).append(" != nullptr) {\n");
-
-        code.append("        jclass cls_").append(currentTemp).append(" = env->GetObjectClass(")
-                .append(obj).append(");\n");
-        code.append("        if (cls_").append(currentTemp).append(" != nullptr) {\n");
-
-        code.append("            jmethodID mid_").append(currentTemp).append(" = env->GetMethodID(cls_")
-                .append(currentTemp).append(", \"").append(insn.name)
-                .append("\", \"").append(insn.descriptor).append("\");\n");
-        code.append("            if (mid_").append(currentTemp).append(" != nullptr) {\n");
-
-        String callMethod = jniHelper.getCallMethod(insn.descriptor, false);
-
-        if (!isVoidMethod) {
-            code.append("                ").append(resultVar).append(" = env->").append(callMethod)
-                    .append("(").append(obj).append(", mid_").append(currentTemp);
-            for (String arg : args) {
-                code.append(", ").append(arg);
-            }
-            code.append(");\n");
-            code.append("                if (env->ExceptionCheck()) {\n");
-            code.append("                    env->ExceptionDescribe();\n");
-            code.append("                    env->ExceptionClear();\n");
-            code.append("                    ").append(resultVar).append(" = ")
-                    .append(typeMapper.getDefaultValue(returnType)).append(";\n");
-            code.append("                }\n");
-        } else {
-            code.append("                env->").append(callMethod).append("(").append(obj)
-                    .append(", mid_").append(currentTemp);
-            for (String arg : args) {
-                code.append(", ").append(arg);
-            }
-            code.append(");\n");
-            code.append("                if (env->ExceptionCheck()) {\n");
-            code.append("                    env->ExceptionDescribe();\n");
-            code.append("                    env->ExceptionClear();\n");
-            code.append("                }\n");
-        }
-
-        code.append("            } else if (env->ExceptionCheck()) {\n");
-        code.append("                env->ExceptionDescribe();\n");
-        code.append("                env->ExceptionClear();\n");
-        code.append("            }\n");
-        code.append("        } else if (env->ExceptionCheck()) {\n");
-        code.append("            env->ExceptionDescribe();\n");
-        code.append("            env->ExceptionClear();\n");
-        code.append("        }\n");
-        code.append("    }\n");
-
-        if (resultVar != null) {
-            stack.push(resultVar);
+        NativeCallTable.Target direct = nativeCalls.resolve(insn, currentClass, currentFunction);
+        if (direct != null) {
+            return handleDirectCall(insn, direct, obj, args, stack, code);
         }
 
+        appendNullCheck(obj, code);
+        String mid = appendMethodId(insn, false, code);
+        appendCall(insn, "env->" + jniHelper.getCallMethod(insn.descriptor, false) + "(" + obj + ", " + mid,
+                args, stack, code);
         return null;
     }
 
@@ -675,70 +1118,17 @@ public class BytecodeTranslator {
         }
         String obj = stack.pop();
 
-        if (insn.name.equals("<init>")) {
-            return "// Constructor call handled by NEW";
-        }
-
-        int currentTemp = tempVarCounter++;
-        String returnType = typeMapper.getReturnType(insn.descriptor);
-        boolean isVoidMethod = returnType.equals("void");
-
-        String resultVar = null;
-        if (!isVoidMethod) {
-            resultVar = "result_" + tempVarCounter++;
-            String cppType = typeMapper.mapJavaTypeToCpp(returnType);
-            code.append("    ").append(cppType).append(" ").append(resultVar)
-                    .append(" = ").append(typeMapper.getDefaultValue(returnType)).append(";\n");
-        }
-
-        code.append("    jclass cls_").append(currentTemp).append(" = env->FindClass(\"")
-                .append(insn.owner).append("\");\n");
-        code.append("    if (cls_").append(currentTemp).append(" != nullptr) {\n");
-
-        code.append("        jmethodID mid_").append(currentTemp).append(" = env->GetMethodID(cls_")
-                .append(currentTemp).append(", \"").append(insn.name)
-                .append("\", \"").append(insn.descriptor).append("\");\n");
-        code.append("        if (mid_").append(currentTemp).append(" != nullptr) {\n");
-
-        String callMethod = jniHelper.getCallMethod(insn.descriptor, false);
-
-        if (!isVoidMethod) {
-            code.append("            ").append(resultVar).append(" = env->").append(callMethod)
-                    .append("(").append(obj).append(", mid_").append(currentTemp);
-            for (String arg : args) {
-                code.append(", ").append(arg);
-            }
-            code.append(");\n");
-            code.append("            if (env->ExceptionCheck()) {\n");
-            code.append("                env->ExceptionDescribe();\n");
-            code.append("                env->ExceptionClear();\n");
-            code.append("            }\n");
-        } else {
-            code.append("            env->").append(callMethod).append("(").append(obj)
-                    .append(", mid_").append(currentTemp);
-            for (String arg : args) {
-                code.append(", ").append(arg);
-            }
-            code.append(");\n");
-            code.append("            if (env->ExceptionCheck()) {\n");
-            code.append("                env->ExceptionDescribe();\n");
-            code.append("                env->ExceptionClear();\n");
-            code.append("            }\n");
-        }
-
-        code.append("        } else if (env->ExceptionCheck()) {\n");
-        code.append("            env->ExceptionDescribe();\n");
-        code.append("            env->ExceptionClear();\n");
-        code.append("        }\n");
-        code.append("    } else if (env->ExceptionCheck()) {\n");
-        code.append("        env->ExceptionDescribe();\n");
-        code.append("        env->ExceptionClear();\n");
-        code.append("    }\n");
-
-        if (resultVar != null) {
-            stack.push(resultVar);
+        NativeCallTable.Target direct = nativeCalls.resolve(insn, currentClass, currentFunction);
+        if (direct != null) {
+            return handleDirectCall(insn, direct, obj, args, stack, code);
         }
 
+        appendNullCheck(obj, code);
+        String mid = appendMethodId(insn, false, code);
+        String callMethod = jniHelper.getCallMethod(insn.descriptor, false)
+                .replace("Call", "CallNonvirtual");
+        appendCall(insn, "env->" + callMethod + "(" + obj + ", " + registry.classRef(insn.owner) + ", " + mid,
+                args, stack, code);
         return null;
     }
 
@@ -751,63 +1141,87 @@ public class BytecodeTranslator {
             args.add(0, stack.pop());
         }
 
-        String returnType = typeMapper.getReturnType(insn.descriptor);
-        int currentTemp = tempVarCounter++;
-        boolean isVoidMethod = returnType.equals("void");
+        NativeCallTable.Target direct = nativeCalls.resolve(insn, currentClass, currentFunction);
+        if (direct != null) {
+            return handleDirectCall(insn, direct, null, args, stack, code);
+        }
 
+        String mid = appendMethodId(insn, true, code);
+        appendCall(insn, "env->" + jniHelper.getCallMethod(insn.descriptor, true) + "("
+                + registry.classRef(insn.owner) + ", " + mid, args, stack, code);
+        return null;
+    }
+
+    private String appendMethodId(InstructionInfo insn, boolean isStatic, StringBuilder code) {
+        String mid = "mid_" + (tempVarCounter++);
+        code.append("    jmethodID ").append(mid).append(" = ")
+                .append(registry.methodRef(insn.owner, insn.name, insn.descriptor, isStatic)).append(";\n");
+        code.append("    if (J2C_UNLIKELY(").append(mid).append(" == nullptr)) goto ")
+                .append(exceptions.target()).append(";\n");
+        return mid;
+    }
+
+    private void appendCall(InstructionInfo insn, String call, List<String> args,
+                            Stack<String> stack, StringBuilder code) {
+        String returnType = typeMapper.getReturnType(insn.descriptor);
+        code.append("    ");
         String resultVar = null;
-        if (!isVoidMethod) {
+        if (!returnType.equals("void")) {
             resultVar = "result_" + tempVarCounter++;
-            String cppType = typeMapper.mapJavaTypeToCpp(returnType);
-            code.append("    ").append(cppType).append(" ").append(resultVar)
-                    .append(" = ").append(typeMapper.getDefaultValue(returnType)).append(";\n");
+            code.append(typeMapper.mapJavaTypeToCpp(returnType)).append(" ").append(resultVar).append(" = ");
         }
+        code.append(call);
+        for (String arg : args) {
+            code.append(", ").append(arg);
+        }
+        code.append(");\n");
+        code.append("    ").append(exceptions.check()).append("\n");
 
-        code.append("    jclass cls_").append(currentTemp).append(" = env->FindClass(\"")
-                .append(insn.owner).append("\");\n");
-        code.append("    if (cls_").append(currentTemp).append(" != nullptr) {\n");
-
-        code.append("        jmethodID mid_").append(currentTemp).append(" = env->GetStaticMethodID(cls_")
-                .append(currentTemp).append(", \"").append(insn.name)
-                .append("\", \"").append(insn.descriptor).append("\");\n");
-        code.append("        if (mid_").append(currentTemp).append(" != nullptr) {\n");
+        if (resultVar != null) {
+            stack.push(resultVar);
+        }
+    }
 
-        String callMethod = jniHelper.getCallMethod(insn.descriptor, true);
+    private String handleDirectCall(InstructionInfo insn, NativeCallTable.Target target, String obj,
+                                    List<String> args, Stack<String> stack, StringBuilder code) {
+        String[] paramTypes = typeMapper.getParameterTypes(insn.descriptor);
+        String returnType = typeMapper.getReturnType(insn.descriptor);
 
-        if (!isVoidMethod) {
-            code.append("            ").append(resultVar).append(" = env->").append(callMethod)
-                    .append("(cls_").append(currentTemp).append(", mid_").append(currentTemp);
-            for (String arg : args) {
-                code.append(", ").append(arg);
+        StringBuilder call = new StringBuilder(target.function).append("(");
+        if (!target.pure) {
+            call.append("env, ").append(obj != null ? obj : registry.classRef(insn.owner));
+        }
+        for (int i = 0; i < args.size(); i++) {
+            if (i > 0 || !target.pure) {
+                call.append(", ");
             }
-            code.append(");\n");
-            code.append("            if (env->ExceptionCheck()) {\n");
-            code.append("                env->ExceptionDescribe();\n");
-            code.append("                env->ExceptionClear();\n");
-            code.append("                ").append(resultVar).append(" = ")
-                    .append(typeMapper.getDefaultValue(returnType)).append(";\n");
-            code.append("            }\n");
-        } else {
-            code.append("            env->").append(callMethod).append("(cls_").append(currentTemp)
-                    .append(", mid_").append(currentTemp);
-            for (String arg : args) {
-                code.append(", ").append(arg);
+            call.append("(").append(typeMapper.mapJavaTypeToCpp(paramTypes[i])).append(")").append(args.get(i));
+        }
+        call.append(")");
+
+        if (obj != null) {
+            appendNullCheck(obj, code);
+        }
+        if (!target.pure) {
+            code.append("    if (J2C_UNLIKELY(env->PushLocalFrame(").append(NativeCallTable.FRAME_CAPACITY)
+                    .append(") < 0)) goto ").append(exceptions.target()).append(";\n");
+        }
+        code.append("    ");
+        String resultVar = null;
+        String cppReturnType = typeMapper.mapJavaTypeToCpp(returnType);
+        if (!returnType.equals("void")) {
+            resultVar = "result_" + tempVarCounter++;
+            code.append(cppReturnType).append(" ").append(resultVar).append(" = ");
+        }
+        code.append(call).append(";\n");
+        if (!target.pure) {
+            if (resultVar != null && cppReturnType.equals("jobject")) {
+                code.append("    ").append(resultVar).append(" = env->PopLocalFrame(").append(resultVar).append(");\n");
+            } else {
+                code.append("    env->PopLocalFrame(nullptr);\n");
             }
-            code.append(");\n");
-            code.append("            if (env->ExceptionCheck()) {\n");
-            code.append("                env->ExceptionDescribe();\n");
-            code.append("                env->ExceptionClear();\n");
-            code.append("            }\n");
-        }
-
-        code.append("        } else if (env->ExceptionCheck()) {\n");
-        code.append("            env->ExceptionDescribe();\n");
-        code.append("            env->ExceptionClear();\n");
-        code.append("        }\n");
-        code.append("    } else if (env->ExceptionCheck()) {\n");
-        code.append("        env->ExceptionDescribe();\n");
-        code.append("        env->ExceptionClear();\n");
-        code.append("    }\n");
+            code.append("    ").append(exceptions.check()).append("\n");
+        }
 
         if (resultVar != null) {
             stack.push(resultVar);
@@ -822,15 +1236,15 @@ public class BytecodeTranslator {
 
     private String handleNew(InstructionInfo insn, Stack<String> stack, StringBuilder code) {
         String objVar = "obj_" + (tempVarCounter++);
-        int currentTemp = tempVarCounter++;
 
-        code.append("    jclass cls_").append(currentTemp).append(" = env->FindClass(\"")
-                .append(insn.typeDesc).append("\");\n");
-        code.append("    jmethodID mid_").append(currentTemp)
-                .append(" = env->GetMethodID(cls_").append(currentTemp)
-                .append(", \"<init>\", \"()V\");\n");
-        code.append("    jobject ").append(objVar).append(" = env->NewObject(cls_")
-                .append(currentTemp).append(", mid_").append(currentTemp).append(");\n");
+        code.append("    jclass cls_").append(objVar).append(" = ")
+                .append(registry.classRef(insn.typeDesc)).append(";\n");
+        code.append("    if (J2C_UNLIKELY(cls_").append(objVar).append(" == nullptr)) goto ")
+                .append(exceptions.target()).append(";\n");
+        code.append("    jobject ").append(objVar).append(" = env->AllocObject(cls_").append(objVar).append(");\n");
+        code.append("    if (J2C_UNLIKELY(").append(objVar).append(" == nullptr)) goto ")
+                .append(exceptions.target()).append(";\n");
+        nonNull.add(objVar);
         stack.push(objVar);
         return null;
     }
@@ -854,6 +1268,9 @@ public class BytecodeTranslator {
 
         code.append("    j" + arrayType.toLowerCase() + "Array ").append(arrayVar)
                 .append(" = env->New").append(arrayType).append("Array(").append(size).append(");\n");
+        code.append("    if (J2C_UNLIKELY(").append(arrayVar).append(" == nullptr)) goto ")
+                .append(exceptions.target()).append(";\n");
+        nonNull.add(arrayVar);
         stack.push(arrayVar);
         return null;
     }
@@ -862,13 +1279,13 @@ public class BytecodeTranslator {
         if (stack.isEmpty()) return "// Stack underflow at ANEWARRAY";
         String size = stack.pop();
         String arrayVar = "arr_" + (tempVarCounter++);
-        int currentTemp = tempVarCounter++;
 
-        code.append("    jclass cls_").append(currentTemp).append(" = env->FindClass(\"")
-                .append(insn.typeDesc).append("\");\n");
         code.append("    jobjectArray ").append(arrayVar)
-                .append(" = env->NewObjectArray(").append(size).append(", cls_")
-                .append(currentTemp).append(", nullptr);\n");
+                .append(" = env->NewObjectArray(").append(size).append(", ")
+                .append(registry.classRef(insn.typeDesc)).append(", nullptr);\n");
+        code.append("    if (J2C_UNLIKELY(").append(arrayVar).append(" == nullptr)) goto ")
+                .append(exceptions.target()).append(";\n");
+        nonNull.add(arrayVar);
         stack.push(arrayVar);
         return null;
     }
@@ -876,7 +1293,15 @@ public class BytecodeTranslator {
     private String handleArrayLength(Stack<String> stack, StringBuilder code) {
         if (stack.isEmpty()) return "// Stack underflow at ARRAYLENGTH";
         String array = stack.pop();
+        ArrayPinning.PinnedArray pinned = pinning != null ? pinning.get(array) : null;
+        if (pinned != null) {
+            code.append(pinning.nullCheck(pinned, pinReturnDefault));
+            stack.push(pinned.length);
+            return null;
+        }
+
         String lenVar = "len_" + (tempVarCounter++);
+        appendNullCheck(array, code);
         code.append("    jsize ").append(lenVar).append(" = env->GetArrayLength((jarray)")
                 .append(array).append(");\n");
         stack.push(lenVar);
@@ -889,100 +1314,30 @@ public class BytecodeTranslator {
         String array = stack.pop();
         String elemVar = "elem" + (tempVarCounter++);
 
-        // Объявляем переменную ДО if блока
-        switch (opcode) {
-            case Opcodes.IALOAD:
-                code.append("jint " + elemVar + " = 0;\n");
-                code.append("if (" + array + " != nullptr) {\n");
-                code.append("    jint* arrdata = env->GetIntArrayElements((jintArray)" + array + ", nullptr);\n");
-                code.append("    if (arrdata != nullptr) {\n");
-                code.append("        " + elemVar + " = arrdata[" + index + "];\n");
-                code.append("        env->ReleaseIntArrayElements((jintArray)" + array + ", arrdata, JNI_ABORT);\n");
-                code.append("    }\n");
-                code.append("}\n");
-                break;
-
-            case Opcodes.LALOAD:
-                code.append("jlong " + elemVar + " = 0LL;\n");
-                code.append("if (" + array + " != nullptr) {\n");
-                code.append("    jlong* arrdata = env->GetLongArrayElements((jlongArray)" + array + ", nullptr);\n");
-                code.append("    if (arrdata != nullptr) {\n");
-                code.append("        " + elemVar + " = arrdata[" + index + "];\n");
-                code.append("        env->ReleaseLongArrayElements((jlongArray)" + array + ", arrdata, JNI_ABORT);\n");
-                code.append("    }\n");
-                code.append("}\n");
-                break;
-
-            case Opcodes.FALOAD:
-                code.append("jfloat " + elemVar + " = 0.0f;\n");
-                code.append("if (" + array + " != nullptr) {\n");
-                code.append("    jfloat* arrdata = env->GetFloatArrayElements((jfloatArray)" + array + ", nullptr);\n");
-                code.append("    if (arrdata != nullptr) {\n");
-                code.append("        " + elemVar + " = arrdata[" + index + "];\n");
-                code.append("        env->ReleaseFloatArrayElements((jfloatArray)" + array + ", arrdata, JNI_ABORT);\n");
-                code.append("    }\n");
-                code.append("}\n");
-                break;
-
-            case Opcodes.DALOAD:
-                code.append("jdouble " + elemVar + " = 0.0;\n");
-                code.append("if (" + array + " != nullptr) {\n");
-                code.append("    jdouble* arrdata = env->GetDoubleArrayElements((jdoubleArray)" + array + ", nullptr);\n");
-                code.append("    if (arrdata != nullptr) {\n");
-                code.append("        " + elemVar + " = arrdata[" + index + "];\n");
-                code.append("        env->ReleaseDoubleArrayElements((jdoubleArray)" + array + ", arrdata, JNI_ABORT);\n");
-                code.append("    }\n");
-                code.append("}\n");
-                break;
-
-            case Opcodes.AALOAD:
-                code.append("jobject " + elemVar + " = nullptr;\n");
-                code.append("if (" + array + " != nullptr) {\n");
-                code.append("    " + elemVar + " = env->GetObjectArrayElement((jobjectArray)" + array + ", " + index + ");\n");
-                code.append("    if (env->ExceptionCheck()) {\n");
-                code.append("        env->ExceptionClear();\n");
-                code.append("        " + elemVar + " = nullptr;\n");
-                code.append("    }\n");
-                code.append("}\n");
-                break;
-
-            case Opcodes.BALOAD:
-                code.append("jbyte " + elemVar + " = 0;\n");
-                code.append("if (" + array + " != nullptr) {\n");
-                code.append("    jbyte* arrdata = env->GetByteArrayElements((jbyteArray)" + array + ", nullptr);\n");
-                code.append("    if (arrdata != nullptr) {\n");
-                code.append("        " + elemVar + " = arrdata[" + index + "];\n");
-                code.append("        env->ReleaseByteArrayElements((jbyteArray)" + array + ", arrdata, JNI_ABORT);\n");
-                code.append("    }\n");
-                code.append("}\n");
-                break;
-
-            case Opcodes.CALOAD:
-                code.append("jchar " + elemVar + " = 0;\n");
-                code.append("if (" + array + " != nullptr) {\n");
-                code.append("    jchar* arrdata = env->GetCharArrayElements((jcharArray)" + array + ", nullptr);\n");
-                code.append("    if (arrdata != nullptr) {\n");
-                code.append("        " + elemVar + " = arrdata[" + index + "];\n");
-                code.append("        env->ReleaseCharArrayElements((jcharArray)" + array + ", arrdata, JNI_ABORT);\n");
-                code.append("    }\n");
-                code.append("}\n");
-                break;
-
-            case Opcodes.SALOAD:
-                code.append("jshort " + elemVar + " = 0;\n");
-                code.append("if (" + array + " != nullptr) {\n");
-                code.append("    jshort* arrdata = env->GetShortArrayElements((jshortArray)" + array + ", nullptr);\n");
-                code.append("    if (arrdata != nullptr) {\n");
-                code.append("        " + elemVar + " = arrdata[" + index + "];\n");
-                code.append("        env->ReleaseShortArrayElements((jshortArray)" + array + ", arrdata, JNI_ABORT);\n");
-                code.append("    }\n");
-                code.append("}\n");
-                break;
+        if (opcode == Opcodes.AALOAD) {
+            appendNullCheck(array, code);
+            code.append("    jobject " + elemVar + " = env->GetObjectArrayElement((jobjectArray)" + array + ", "
+                    + index + ");\n");
+            code.append("    " + exceptions.check() + "\n");
+            stack.push(elemVar);
+            return null;
+        }
 
-            default:
-                code.append("jint " + elemVar + " = 0;\n");
+        String[] region = arrayRegion(opcode);
+        ArrayPinning.PinnedArray pinned = pinning != null ? pinning.get(array) : null;
+        if (pinned != null) {
+            code.append(pinning.boundsCheck(pinned, index, pinReturnDefault));
+            code.append(region[1] + " " + elemVar + " = " + pinned.data + "[" + index + "];\n");
+            stack.push(elemVar);
+            return null;
         }
 
+        appendNullCheck(array, code);
+        code.append("    " + region[1] + " " + elemVar + " = " + region[3] + ";\n");
+        code.append("    env->Get" + region[0] + "ArrayRegion((" + region[2] + ")" + array + ", "
+                + index + ", 1, &" + elemVar + ");\n");
+        code.append("    " + exceptions.check() + "\n");
+
         stack.push(elemVar);
         return null;
     }
@@ -993,173 +1348,112 @@ public class BytecodeTranslator {
         String index = stack.pop();
         String array = stack.pop();
 
-        code.append("if (" + array + " != nullptr) {\n");
-
-        switch (opcode) {
-            case Opcodes.IASTORE:
-                code.append("    jint* arrdata = env->GetIntArrayElements((jintArray)" + array + ", nullptr);\n");
-                code.append("    if (arrdata != nullptr) {\n");
-                code.append("        arrdata[" + index + "] = " + value + ";\n");
-                code.append("        env->ReleaseIntArrayElements((jintArray)" + array + ", arrdata, 0);\n");
-                code.append("    }\n");
-                break;
-
-            case Opcodes.LASTORE:
-                code.append("    jlong* arrdata = env->GetLongArrayElements((jlongArray)" + array + ", nullptr);\n");
-                code.append("    if (arrdata != nullptr) {\n");
-                code.append("        arrdata[" + index + "] = " + value + ";\n");
-                code.append("        env->ReleaseLongArrayElements((jlongArray)" + array + ", arrdata, 0);\n");
-                code.append("    }\n");
-                break;
-
-            case Opcodes.FASTORE:
-                code.append("    jfloat* arrdata = env->GetFloatArrayElements((jfloatArray)" + array + ", nullptr);\n");
-                code.append("    if (arrdata != nullptr) {\n");
-                code.append("        arrdata[" + index + "] = " + value + ";\n");
-                code.append("        env->ReleaseFloatArrayElements((jfloatArray)" + array + ", arrdata, 0);\n");
-                code.append("    }\n");
-                break;
-
-            case Opcodes.DASTORE:
-                code.append("    jdouble* arrdata = env->GetDoubleArrayElements((jdoubleArray)" + array + ", nullptr);\n");
-                code.append("    if (arrdata != nullptr) {\n");
-                code.append("        arrdata[" + index + "] = " + value + ";\n");
-                code.append("        env->ReleaseDoubleArrayElements((jdoubleArray)" + array + ", arrdata, 0);\n");
-                code.append("    }\n");
-                break;
-
-            case Opcodes.AASTORE:
-                code.append("    env->SetObjectArrayElement((jobjectArray)" + array + ", " + index + ", " + value + ");\n");
-                break;
-
-            case Opcodes.BASTORE:
-                code.append("    jbyte* arrdata = env->GetByteArrayElements((jbyteArray)" + array + ", nullptr);\n");
-                code.append("    if (arrdata != nullptr) {\n");
-                code.append("        arrdata[" + index + "] = " + value + ";\n");
-                code.append("        env->ReleaseByteArrayElements((jbyteArray)" + array + ", arrdata, 0);\n");
-                code.append("    }\n");
-                break;
-
-            case Opcodes.CASTORE:
-                code.append("    jchar* arrdata = env->GetCharArrayElements((jcharArray)" + array + ", nullptr);\n");
-                code.append("    if (arrdata != nullptr) {\n");
-                code.append("        arrdata[" + index + "] = " + value + ";\n");
-                code.append("        env->ReleaseCharArrayElements((jcharArray)" + array + ", arrdata, 0);\n");
-                code.append("    }\n");
-                break;
-
-            case Opcodes.SASTORE:
-                code.append("    jshort* arrdata = env->GetShortArrayElements((jshortArray)" + array + ", nullptr);\n");
-                code.append("    if (arrdata != nullptr) {\n");
-                code.append("        arrdata[" + index + "] = " + value + ";\n");
-                code.append("        env->ReleaseShortArrayElements((jshortArray)" + array + ", arrdata, 0);\n");
-                code.append("    }\n");
-                break;
+        ArrayPinning.PinnedArray pinned = pinning != null ? pinning.get(array) : null;
+        if (pinned != null) {
+            pinned.written = true;
+            code.append(pinning.boundsCheck(pinned, index, pinReturnDefault));
+            code.append("    " + pinned.data + "[" + index + "] = (" + pinned.elementType + ")(" + value + ");\n");
+            return null;
         }
 
-        code.append("}\n");
+        appendNullCheck(array, code);
+        if (opcode == Opcodes.AASTORE) {
+            code.append("    env->SetObjectArrayElement((jobjectArray)" + array + ", " + index + ", " + value + ");\n");
+        } else {
+            String[] region = arrayRegion(opcode);
+            String elemVar = "store" + (tempVarCounter++);
+            code.append("    " + region[1] + " " + elemVar + " = (" + region[1] + ")(" + value + ");\n");
+            code.append("    env->Set" + region[0] + "ArrayRegion((" + region[2] + ")" + array + ", "
+                    + index + ", 1, &" + elemVar + ");\n");
+        }
+        code.append("    " + exceptions.check() + "\n");
         return null;
     }
 
-    private String boxPrimitiveIfNeeded(String value, String javaType, StringBuilder code) {
-        switch (javaType) {
-            case "int":
-                String intBoxVar = "boxed" + (tempVarCounter++);
-                int currentTemp = tempVarCounter++;
-                code.append("jclass intCls" + currentTemp + " = env->FindClass(\"java/lang/Integer\");\n");
-                code.append("jmethodID intCtor" + currentTemp + " = env->GetMethodID(intCls" + currentTemp + ", \"<init>\", \"(I)V\");\n");
-                code.append("jobject " + intBoxVar + " = env->NewObject(intCls" + currentTemp + ", intCtor" + currentTemp + ", " + value + ");\n");
-                return intBoxVar;
-
-            case "long":
-                String longBoxVar = "boxed" + (tempVarCounter++);
-                currentTemp = tempVarCounter++;
-                code.append("jclass longCls" + currentTemp + " = env->FindClass(\"java/lang/Long\");\n");
-                code.append("jmethodID longCtor" + currentTemp + " = env->GetMethodID(longCls" + currentTemp + ", \"<init>\", \"(J)V\");\n");
-                code.append("jobject " + longBoxVar + " = env->NewObject(longCls" + currentTemp + ", longCtor" + currentTemp + ", " + value + ");\n");
-                return longBoxVar;
-
-            case "float":
-                String floatBoxVar = "boxed" + (tempVarCounter++);
-                currentTemp = tempVarCounter++;
-                code.append("jclass floatCls" + currentTemp + " = env->FindClass(\"java/lang/Float\");\n");
-                code.append("jmethodID floatCtor" + currentTemp + " = env->GetMethodID(floatCls" + currentTemp + ", \"<init>\", \"(F)V\");\n");
-                code.append("jobject " + floatBoxVar + " = env->NewObject(floatCls" + currentTemp + ", floatCtor" + currentTemp + ", " + value + ");\n");
-                return floatBoxVar;
-
-            case "double":
-                String doubleBoxVar = "boxed" + (tempVarCounter++);
-                currentTemp = tempVarCounter++;
-                code.append("jclass doubleCls" + currentTemp + " = env->FindClass(\"java/lang/Double\");\n");
-                code.append("jmethodID doubleCtor" + currentTemp + " = env->GetMethodID(doubleCls" + currentTemp + ", \"<init>\", \"(D)V\");\n");
-                code.append("jobject " + doubleBoxVar + " = env->NewObject(doubleCls" + currentTemp + ", doubleCtor" + currentTemp + ", " + value + ");\n");
-                return doubleBoxVar;
-
-            case "boolean":
-                String boolBoxVar = "boxed" + (tempVarCounter++);
-                currentTemp = tempVarCounter++;
-                code.append("jclass boolCls" + currentTemp + " = env->FindClass(\"java/lang/Boolean\");\n");
-                code.append("jmethodID boolCtor" + currentTemp + " = env->GetMethodID(boolCls" + currentTemp + ", \"<init>\", \"(Z)V\");\n");
-                code.append("jobject " + boolBoxVar + " = env->NewObject(boolCls" + currentTemp + ", boolCtor" + currentTemp + ", " + value + ");\n");
-                return boolBoxVar;
-
-            case "byte":
-                String byteBoxVar = "boxed" + (tempVarCounter++);
-                currentTemp = tempVarCounter++;
-                code.append("jclass byteCls" + currentTemp + " = env->FindClass(\"java/lang/Byte\");\n");
-                code.append("jmethodID byteCtor" + currentTemp + " = env->GetMethodID(byteCls" + currentTemp + ", \"<init>\", \"(B)V\");\n");
-                code.append("jobject " + byteBoxVar + " = env->NewObject(byteCls" + currentTemp + ", byteCtor" + currentTemp + ", " + value + ");\n");
-                return byteBoxVar;
-
-            case "char":
-                String charBoxVar = "boxed" + (tempVarCounter++);
-                currentTemp = tempVarCounter++;
-                code.append("jclass charCls" + currentTemp + " = env->FindClass(\"java/lang/Character\");\n");
-                code.append("jmethodID charCtor" + currentTemp + " = env->GetMethodID(charCls" + currentTemp + ", \"<init>\", \"(C)V\");\n");
-                code.append("jobject " + charBoxVar + " = env->NewObject(charCls" + currentTemp + ", charCtor" + currentTemp + ", " + value + ");\n");
-                return charBoxVar;
-
-            case "short":
-                String shortBoxVar = "boxed" + (tempVarCounter++);
-                currentTemp = tempVarCounter++;
-                code.append("jclass shortCls" + currentTemp + " = env->FindClass(\"java/lang/Short\");\n");
-                code.append("jmethodID shortCtor" + currentTemp + " = env->GetMethodID(shortCls" + currentTemp + ", \"<init>\", \"(S)V\");\n");
-                code.append("jobject " + shortBoxVar + " = env->NewObject(shortCls" + currentTemp + ", shortCtor" + currentTemp + ", " + value + ");\n");
-                return shortBoxVar;
-
+    private String[] arrayRegion(int opcode) {
+        switch (opcode) {
+            case Opcodes.LALOAD: case Opcodes.LASTORE:
+                return new String[]{"Long", "jlong", "jlongArray", "0LL"};
+            case Opcodes.FALOAD: case Opcodes.FASTORE:
+                return new String[]{"Float", "jfloat", "jfloatArray", "0.0f"};
+            case Opcodes.DALOAD: case Opcodes.DASTORE:
+                return new String[]{"Double", "jdouble", "jdoubleArray", "0.0"};
+            case Opcodes.BALOAD: case Opcodes.BASTORE:
+                return new String[]{"Byte", "jbyte", "jbyteArray", "0"};
+            case Opcodes.CALOAD: case Opcodes.CASTORE:
+                return new String[]{"Char", "jchar", "jcharArray", "0"};
+            case Opcodes.SALOAD: case Opcodes.SASTORE:
+                return new String[]{"Short", "jshort", "jshortArray", "0"};
             default:
-                return value;
+                return new String[]{"Int", "jint", "jintArray", "0"};
         }
     }
 
+    public static void writeRuntime(Writer out) throws IOException {
+        out.write("static inline jint j2c_iadd(jint a, jint b) { return (jint)((unsigned int)a + (unsigned int)b); }\n");
+        out.write("static inline jint j2c_isub(jint a, jint b) { return (jint)((unsigned int)a - (unsigned int)b); }\n");
+        out.write("static inline jint j2c_imul(jint a, jint b) { return (jint)((unsigned int)a * (unsigned int)b); }\n");
+        out.write("static inline jint j2c_ineg(jint a) { return (jint)(0U - (unsigned int)a); }\n");
+        out.write("static inline jint j2c_ishl(jint a, jint b) { return (jint)((unsigned int)a << (b & 31)); }\n");
+        out.write("static inline jint j2c_ishr(jint a, jint b) { return a >> (b & 31); }\n");
+        out.write("static inline jint j2c_iushr(jint a, jint b) { return (jint)((unsigned int)a >> (b & 31)); }\n");
+        out.write("static inline jlong j2c_ladd(jlong a, jlong b) { return (jlong)((unsigned long long)a + (unsigned long long)b); }\n");
+        out.write("static inline jlong j2c_lsub(jlong a, jlong b) { return (jlong)((unsigned long long)a - (unsigned long long)b); }\n");
+        out.write("static inline jlong j2c_lmul(jlong a, jlong b) { return (jlong)((unsigned long long)a * (unsigned long long)b); }\n");
+        out.write("static inline jlong j2c_lneg(jlong a) { return (jlong)(0ULL - (unsigned long long)a); }\n");
+        out.write("static inline jlong j2c_lshl(jlong a, jint b) { return (jlong)((unsigned long long)a << (b & 63)); }\n");
+        out.write("static inline jlong j2c_lshr(jlong a, jint b) { return a >> (b & 63); }\n");
+        out.write("static inline jlong j2c_lushr(jlong a, jint b) { return (jlong)((unsigned long long)a >> (b & 63)); }\n\n");
+    }
+
     private String handleThrow(Stack<String> stack, StringBuilder code) {
         if (stack.isEmpty()) return "// Stack underflow at ATHROW";
         String exception = stack.pop();
-        return "env->Throw((jthrowable)" + exception + ");";
+        appendNullCheck(exception, code);
+        return "env->Throw((jthrowable)" + exception + "); goto " + exceptions.target() + ";";
     }
 
     private String handleCheckCast(InstructionInfo insn, Stack<String> stack, StringBuilder code) {
         if (stack.isEmpty()) return "// Stack underflow at CHECKCAST";
-        return "// CHECKCAST to " + insn.typeDesc;
+        String obj = stack.peek();
+        String castClass = "cast_" + (tempVarCounter++);
+        String target = insn.typeDesc.replace('/', '.');
+
+        code.append("    if (").append(obj).append(" != nullptr) {\n");
+        code.append("        jclass ").append(castClass).append(" = ")
+                .append(registry.classRef(insn.typeDesc)).append(";\n");
+        code.append("        if (J2C_UNLIKELY(").append(castClass).append(" == nullptr)) goto ")
+                .append(exceptions.target()).append(";\n");
+        code.append("        if (J2C_UNLIKELY(!env->IsInstanceOf(").append(obj).append(", ").append(castClass)
+                .append("))) ").append(throwNew("java/lang/ClassCastException", "Cannot cast to " + target))
+                .append("\n");
+        code.append("    }\n");
+        return null;
+    }
+
+    private String handleMonitor(int opcode, Stack<String> stack, StringBuilder code) {
+        if (stack.isEmpty()) return "// Stack underflow at MONITOR";
+        String monitor = stack.pop();
+        appendNullCheck(monitor, code);
+        String call = opcode == Opcodes.MONITORENTER ? "MonitorEnter" : "MonitorExit";
+        return "if (J2C_UNLIKELY(env->" + call + "(" + monitor + ") != JNI_OK)) goto " + exceptions.target() + ";";
     }
 
     private String handleInstanceOf(InstructionInfo insn, Stack<String> stack, StringBuilder code) {
         if (stack.isEmpty()) return "// Stack underflow at INSTANCEOF";
         String obj = stack.pop();
         String resultVar = "instanceof_" + (tempVarCounter++);
-        int currentTemp = tempVarCounter++;
 
-        code.append("    jclass cls_").append(currentTemp).append(" = env->FindClass(\"")
-                .append(insn.typeDesc).append("\");\n");
-        code.append("    jboolean ").append(resultVar).append(" = env->IsInstanceOf(")
-                .append(obj).append(", cls_").append(currentTemp).append(");\n");
+        code.append("    jboolean ").append(resultVar).append(" = ").append(obj)
+                .append(" != nullptr && env->IsInstanceOf(").append(obj).append(", ")
+                .append(registry.classRef(insn.typeDesc)).append(");\n");
 
         stack.push(resultVar);
         return null;
     }
 
     private String handleTableSwitch(InstructionInfo insn, Stack<String> stack,
-                                     StringBuilder code, Map<String, String> labels) {
+                                     StringBuilder code, Map<Label, String> labels) {
         if (stack.isEmpty()) return "// Stack underflow at TABLESWITCH";
         String value = stack.pop();
 
@@ -1169,7 +1463,7 @@ public class BytecodeTranslator {
         if (insn.switchLabels != null) {
             for (int i = 0; i < insn.switchLabels.size(); i++) {
                 String caseLabel = getOrCreateLabel(insn.switchLabels.get(i), labels);
-                sw.append("        case ").append(i).append(": goto ").append(caseLabel).append(";\n");
+                sw.append("        case ").append(insn.switchKeys.get(i)).append(": goto ").append(caseLabel).append(";\n");
             }
         }
 
@@ -1183,7 +1477,7 @@ public class BytecodeTranslator {
     }
 
     private String handleLookupSwitch(InstructionInfo insn, Stack<String> stack,
-                                      StringBuilder code, Map<String, String> labels) {
+                                      StringBuilder code, Map<Label, String> labels) {
         if (stack.isEmpty()) return "// Stack underflow at LOOKUPSWITCH";
         String value = stack.pop();
 
@@ -1193,7 +1487,7 @@ public class BytecodeTranslator {
         if (insn.switchLabels != null) {
             for (int i = 0; i < insn.switchLabels.size(); i++) {
                 String caseLabel = getOrCreateLabel(insn.switchLabels.get(i), labels);
-                sw.append("        case ").append(i).append(": goto ").append(caseLabel).append(";\n");
+                sw.append("        case ").append(insn.switchKeys.get(i)).append(": goto ").append(caseLabel).append(";\n");
             }
         }
 
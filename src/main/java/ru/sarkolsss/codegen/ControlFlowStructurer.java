@@ -0,0 +1,203 @@
+package ru.sarkolsss.codegen;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import ru.sarkolsss.bytecode.InstructionInfo;
+import ru.sarkolsss.bytecode.LoopAnalyzer;
+import ru.sarkolsss.bytecode.LoopInfo;
+import ru.sarkolsss.bytecode.MethodBodyInfo;
+import ru.sarkolsss.bytecode.TryCatchInfo;
+import java.util.*;
+
+public class ControlFlowStructurer {
+    public enum Kind { LOOP, IF, ELSE }
+
+    private final List<Region> regions = new ArrayList<>();
+    private final Map<Integer, Region> opening = new HashMap<>();
+    private final Map<Integer, Region> elseOpening = new HashMap<>();
+    private final Set<Integer> elseGotos = new HashSet<>();
+    private Map<Label, Integer> labelIndex = new IdentityHashMap<>();
+
+    public void clear() {
+        regions.clear();
+        opening.clear();
+        elseOpening.clear();
+        elseGotos.clear();
+        labelIndex = new IdentityHashMap<>();
+    }
+
+    public void analyze(MethodBodyInfo body) {
+        clear();
+
+        List<InstructionInfo> insns = body.instructions;
+        labelIndex = LoopAnalyzer.labelIndex(insns);
+        Map<Integer, List<Integer>> sources = jumpSources(body);
+
+        List<LoopInfo> loops = new ArrayList<>(LoopAnalyzer.findLoops(body));
+        loops.sort(Comparator.comparingInt((LoopInfo l) -> l.header).thenComparingInt(l -> -l.end));
+        for (LoopInfo loop : loops) {
+            if (insns.get(loop.header).opcode != -1
+                    || !enteredOnlyFromWithin(sources, loop.header + 1, loop.end + 1, loop.header, loop.end)) {
+                continue;
+            }
+            Region region = new Region(Kind.LOOP, loop.header, loop.end + 1);
+            if (nests(region)) {
+                regions.add(region);
+                opening.put(loop.header, region);
+            }
+        }
+
+        for (int i = 0; i < insns.size(); i++) {
+            InstructionInfo insn = insns.get(i);
+            if (!isConditional(insn.opcode) || insn.label == null) {
+                continue;
+            }
+            Integer target = labelIndex.get(insn.label);
+            if (target == null || target <= i + 1 || loopJump(i, target) != null) {
+                continue;
+            }
+
+            Region then = new Region(Kind.IF, i, target);
+            if (!enteredOnlyFromWithin(sources, i + 1, target, i, target - 1) || !nests(then)) {
+                continue;
+            }
+            regions.add(then);
+            opening.put(i, then);
+
+            int last = target - 1;
+            while (last > i && insns.get(last).opcode == -1) {
+                last--;
+            }
+            InstructionInfo tail = insns.get(last);
+            Integer end = tail.opcode == Opcodes.GOTO ? labelIndex.get(tail.label) : null;
+            if (end == null || end <= target || loopJump(last, end) != null
+                    || !sources.getOrDefault(target, List.of()).equals(List.of(i))) {
+                continue;
+            }
+            Region otherwise = new Region(Kind.ELSE, target, end);
+            if (enteredOnlyFromWithin(sources, target + 1, end, target, end - 1) && nests(otherwise)) {
+                regions.add(otherwise);
+                elseOpening.put(target, otherwise);
+                elseGotos.add(last);
+            }
+        }
+    }
+
+    public Region loopAt(int index) {
+        Region region = opening.get(index);
+        return region != null && region.kind == Kind.LOOP ? region : null;
+    }
+
+    public Region ifAt(int index) {
+        Region region = opening.get(index);
+        return region != null && region.kind == Kind.IF ? region : null;
+    }
+
+    public boolean isElseGoto(int index) {
+        return elseGotos.contains(index);
+    }
+
+    public List<Region> closing(int index) {
+        List<Region> closed = new ArrayList<>();
+        for (Region region : regions) {
+            if (region.close == index) {
+                closed.add(region);
+            }
+        }
+        closed.sort(Comparator.comparingInt((Region r) -> -r.open));
+        return closed;
+    }
+
+    public Region elseAt(int index) {
+        return elseOpening.get(index);
+    }
+
+    public String replaceJump(int index, Label target, String gotoStatement, String translated) {
+        Integer to = labelIndex.get(target);
+        if (to == null || translated == null || !translated.contains(gotoStatement)) {
+            return translated;
+        }
+        String keyword = loopJump(index, to);
+        return keyword != null ? translated.replace(gotoStatement, keyword) : translated;
+    }
+
+    private String loopJump(int index, int target) {
+        Region innermost = null;
+        for (Region region : regions) {
+            if (region.kind == Kind.LOOP && region.open < index && index < region.close
+                    && (innermost == null || region.open > innermost.open)) {
+                innermost = region;
+            }
+        }
+        if (innermost == null) {
+            return null;
+        }
+        if (target == innermost.open) {
+            return "continue;";
+        }
+        return target == innermost.close ? "break;" : null;
+    }
+
+    private boolean nests(Region candidate) {
+        for (Region region : regions) {
+            int from = candidate.open + (candidate.kind == Kind.IF ? 1 : 0);
+            int regionFrom = region.open + (region.kind == Kind.IF ? 1 : 0);
+            boolean disjoint = candidate.close <= regionFrom || from >= region.close;
+            boolean inside = candidate.open >= regionFrom && candidate.close <= region.close;
+            boolean contains = from <= region.open && region.close <= candidate.close;
+            if (!disjoint && !inside && !contains) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean enteredOnlyFromWithin(Map<Integer, List<Integer>> sources,
+                                                 int from, int to, int low, int high) {
+        for (int label = from; label < to; label++) {
+            for (int source : sources.getOrDefault(label, List.of())) {
+                if (source < low || source > high) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private Map<Integer, List<Integer>> jumpSources(MethodBodyInfo body) {
+        Map<Integer, List<Integer>> sources = new HashMap<>();
+        List<InstructionInfo> insns = body.instructions;
+        for (int i = 0; i < insns.size(); i++) {
+            for (Label target : LoopAnalyzer.targets(insns.get(i))) {
+                Integer to = labelIndex.get(target);
+                if (to != null) {
+                    sources.computeIfAbsent(to, k -> new ArrayList<>()).add(i);
+                }
+            }
+        }
+        for (TryCatchInfo block : body.tryCatchBlocks) {
+            Integer handler = labelIndex.get(block.handler);
+            if (handler != null) {
+                sources.computeIfAbsent(handler, k -> new ArrayList<>()).add(-1);
+            }
+        }
+        return sources;
+    }
+
+    private static boolean isConditional(int opcode) {
+        return (opcode >= Opcodes.IFEQ && opcode <= Opcodes.IF_ACMPNE)
+                || opcode == Opcodes.IFNULL || opcode == Opcodes.IFNONNULL;
+    }
+
+    public static class Region {
+        public final Kind kind;
+        public final int open;
+        public final int close;
+
+        Region(Kind kind, int open, int close) {
+            this.kind = kind;
+            this.open = open;
+            this.close = close;
+        }
+    }
+}
@@ -3,26 +3,48 @@ package ru.sarkolsss.codegen;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
+import ru.sarkolsss.bytecode.ClassIndex;
 import ru.sarkolsss.bytecode.MethodBodyAnalyzer;
 import ru.sarkolsss.bytecode.MethodBodyInfo;
+import ru.sarkolsss.bytecode.MethodOptimizer;
 import ru.sarkolsss.bytecode.NativeMethodInfo;
 import ru.sarkolsss.utils.Logger;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class CppGenerator {
     private final Path workDir;
     private final TypeMapper typeMapper;
     private final JniHeaderGenerator headerGen;
+    private final JniRegistry registry;
     private final BytecodeTranslator translator;
+    private final NativeCallTable nativeCalls;
+    private final MethodInliner inliner;
+    private int pureMethods;
+    private int optimizedInstructions;
 
     public CppGenerator(Path workDir) {
+        this(workDir, MethodInliner.DEFAULT_BUDGET);
+    }
+
+    public CppGenerator(Path workDir, int inlineBudget) {
         this.workDir = workDir;
         this.typeMapper = new TypeMapper();
         this.headerGen = new JniHeaderGenerator();
-        this.translator = new BytecodeTranslator(typeMapper);
+        this.registry = new JniRegistry();
+        ClassIndex classIndex = new ClassIndex(workDir);
+        this.nativeCalls = new NativeCallTable(classIndex);
+        this.inliner = new MethodInliner(classIndex, inlineBudget);
+        this.translator = new BytecodeTranslator(typeMapper, registry, classIndex, nativeCalls, inliner);
     }
 
     public void generate(List<NativeMethodInfo> methods) {
@@ -31,7 +53,7 @@ public class CppGenerator {
         try {
             Files.createDirectories(cppDir);
 
-            generateHeader(cppDir, methods);
+            generateHeader(cppDir);
             generateImplementation(cppDir, methods);
 
             Logger.detail("Generated C++ code for " + methods.size() + " methods");
@@ -41,46 +63,107 @@ public class CppGenerator {
         }
     }
 
-    private void generateHeader(Path dir, List<NativeMethodInfo> methods)
-            throws IOException {
-        StringBuilder header = new StringBuilder();
-
-        header.append("#ifndef JAVA2CPP_NATIVE_H\n");
-        header.append("#define JAVA2CPP_NATIVE_H\n\n");
-        header.append("#include <jni.h>\n");
-        header.append("#include <string>\n");
-        header.append("#include <vector>\n");
-        header.append("#include <cmath>\n\n");
-        header.append("extern \"C\" {\n\n");
-
-        for (NativeMethodInfo method : methods) {
-            String signature = headerGen.generateSignature(method);
-            header.append(signature).append(";\n\n");
+    private void generateHeader(Path dir) throws IOException {
+        try (Writer header = openWriter(dir.resolve("native.h"))) {
+            header.write("#ifndef JAVA2CPP_NATIVE_H\n");
+            header.write("#define JAVA2CPP_NATIVE_H\n\n");
+            header.write("#include <jni.h>\n");
+            header.write("#include <string>\n");
+            header.write("#include <vector>\n");
+            header.write("#include <cmath>\n\n");
+            registry.writeDeclarations(header);
+            ExceptionDispatch.writeRuntime(header);
+            ArrayPinning.writeRuntime(header);
+            BytecodeTranslator.writeRuntime(header);
+            header.write("#endif\n");
         }
-
-        header.append("}\n\n");
-        header.append("#endif\n");
-
-        Files.writeString(dir.resolve("native.h"), header.toString());
     }
 
     private void generateImplementation(Path dir, List<NativeMethodInfo> methods)
             throws IOException {
-        StringBuilder impl = new StringBuilder();
+        try (Writer impl = openWriter(dir.resolve("native.cpp"))) {
+            impl.write("#include \"native.h\"\n");
+            impl.write("#include <iostream>\n");
+            impl.write("#include <cstring>\n\n");
+
+            Map<String, NativeMethodInfo> implementations = new HashMap<>();
+            Map<NativeMethodInfo, Boolean> uniqueMethods = new LinkedHashMap<>();
+            NativeBindingTable bindings = new NativeBindingTable();
+            int deduplicated = 0;
+
+            for (NativeMethodInfo method : methods) {
+                MethodBodyInfo bodyInfo = extractMethodBody(method, false);
+                NativeMethodInfo shared = bodyInfo != null && bodyInfo.fingerprint != null
+                        ? implementations.putIfAbsent(bodyInfo.fingerprint, method)
+                        : null;
+                Set<String> calls = bodyInfo != null ? NativeCallTable.calls(bodyInfo.instructions) : Set.of();
+
+                if (shared != null) {
+                    bindings.bind(method, shared.getJniMethodName());
+                    nativeCalls.register(method, shared, uniqueMethods.get(shared), calls);
+                    deduplicated++;
+                } else {
+                    uniqueMethods.put(method, isPure(bodyInfo));
+                    bindings.bind(method, method.getJniMethodName());
+                    nativeCalls.register(method, method, isPure(bodyInfo), calls);
+                }
+            }
+
+            for (Map.Entry<NativeMethodInfo, Boolean> entry : uniqueMethods.entrySet()) {
+                if (entry.getValue()) {
+                    impl.write(headerGen.generatePureSignature(entry.getKey()) + ";\n");
+                }
+                impl.write(headerGen.generateSignature(entry.getKey()) + ";\n");
+            }
+            impl.write("\n");
+
+            for (NativeMethodInfo method : uniqueMethods.keySet()) {
+                impl.write(generateMethodImplementation(method, extractMethodBody(method, true)));
+                impl.write("\n\n");
+            }
+
+            if (optimizedInstructions > 0) {
+                Logger.detail("Folded or eliminated " + optimizedInstructions + " instructions");
+            }
+            if (translator.eliminatedNullChecks() > 0) {
+                Logger.detail("Removed " + translator.eliminatedNullChecks() + " null checks proven redundant on the SSA form");
+            }
+            if (translator.coalescedCopies() > 0) {
+                Logger.detail("Coalesced " + translator.coalescedCopies() + " local copies on the SSA form");
+            }
+            if (pureMethods > 0) {
+                Logger.detail("Compiled " + pureMethods + " pure primitive methods without JNIEnv");
+            }
+            if (inliner.inlinedCallCount() > 0) {
+                Logger.detail("Inlined " + inliner.inlinedCallCount() + " calls to trivial methods");
+            }
+            if (nativeCalls.directCallCount() > 0) {
+                Logger.detail("Linked " + nativeCalls.directCallCount() + " calls directly between native methods");
+            }
+            if (deduplicated > 0) {
+                Logger.detail("Deduplicated " + deduplicated + " methods with identical bytecode");
+            }
 
-        impl.append("#include \"native.h\"\n");
-        impl.append("#include <iostream>\n");
-        impl.append("#include <cstring>\n\n");
+            registry.writeDefinitions(impl);
+            Logger.detail("JNI registry: " + registry.classCount() + " classes, "
+                    + registry.methodCount() + " methods, " + registry.fieldCount() + " fields, "
+                    + registry.stringCount() + " strings");
 
-        for (NativeMethodInfo method : methods) {
-            MethodBodyInfo bodyInfo = extractMethodBody(method);
-            impl.append(generateMethodImplementation(method, bodyInfo)).append("\n\n");
+            impl.write("\n");
+            bindings.writeRegistration(impl);
+            Logger.detail("RegisterNatives tables generated for " + bindings.classCount() + " classes");
         }
+    }
+
+    private static boolean isPure(MethodBodyInfo bodyInfo) {
+        return bodyInfo != null && bodyInfo.pure && !bodyInfo.instructions.isEmpty();
+    }
 
-        Files.writeString(dir.resolve("native.cpp"), impl.toString());
+    private Writer openWriter(Path file) throws IOException {
+        return Files.newBufferedWriter(file, StandardCharsets.UTF_8);
     }
 
-    private MethodBodyInfo extractMethodBody(NativeMethodInfo method) {
+    private MethodBodyInfo extractMethodBody(NativeMethodInfo method, boolean optimize) {
         Path classPath = workDir.resolve(method.getClassName() + ".class");
 
         try {
@@ -92,7 +175,11 @@ public class CppGenerator {
             for (MethodNode methodNode : classNode.methods) {
                 if (methodNode.name.equals(method.getMethodName()) &&
                         methodNode.desc.equals(method.getDescriptor())) {
-                    return MethodBodyAnalyzer.analyzeMethod(methodNode, method.getClassName());
+                    MethodBodyInfo bodyInfo = MethodBodyAnalyzer.analyzeMethod(methodNode, method.getClassName());
+                    if (optimize) {
+                        optimizedInstructions += MethodOptimizer.optimize(bodyInfo);
+                    }
+                    return bodyInfo;
                 }
             }
         } catch (IOException e) {
@@ -105,6 +192,27 @@ public class CppGenerator {
     private String generateMethodImplementation(NativeMethodInfo method, MethodBodyInfo bodyInfo) {
         StringBuilder impl = new StringBuilder();
 
+        if (isPure(bodyInfo)) {
+            pureMethods++;
+            impl.append(headerGen.generatePureSignature(method)).append(" {\n");
+            impl.append(translator.translateMethodBody(bodyInfo, method));
+            impl.append("}\n\n");
+
+            String returnType = typeMapper.getReturnType(method.getDescriptor());
+            String[] params = typeMapper.getParameterTypes(method.getDescriptor());
+            List<String> args = new ArrayList<>();
+            for (int i = 0; i < params.length; i++) {
+                args.add("param" + i);
+            }
+            impl.append(headerGen.generateSignature(method)).append(" {\n    ");
+            if (!returnType.equals("void")) {
+                impl.append("return ");
+            }
+            impl.append(method.getPureFunctionName()).append("(").append(String.join(", ", args))
+                    .append(");\n}");
+            return impl.toString();
+        }
+
         String signature = headerGen.generateSignature(method);
         impl.append(signature).append(" {\n");
 
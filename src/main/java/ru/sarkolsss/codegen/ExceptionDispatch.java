@@ -0,0 +1,104 @@
+package ru.sarkolsss.codegen;
+
+import org.objectweb.asm.Label;
+import ru.sarkolsss.bytecode.LoopAnalyzer;
+import ru.sarkolsss.bytecode.MethodBodyInfo;
+import ru.sarkolsss.bytecode.TryCatchInfo;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+public class ExceptionDispatch {
+    private final List<Range> ranges = new ArrayList<>();
+    private final Map<String, Dispatch> dispatches = new LinkedHashMap<>();
+    private LocalRefFrames frames;
+    private int position;
+
+    public void analyze(MethodBodyInfo body, LocalRefFrames frames) {
+        ranges.clear();
+        dispatches.clear();
+        this.frames = frames;
+        position = 0;
+
+        Map<Label, Integer> labelIndex = LoopAnalyzer.labelIndex(body.instructions);
+        for (TryCatchInfo block : body.tryCatchBlocks) {
+            Integer start = labelIndex.get(block.start);
+            Integer end = labelIndex.get(block.end);
+            Integer handler = labelIndex.get(block.handler);
+            if (start != null && end != null && handler != null) {
+                ranges.add(new Range(start, end, block));
+            }
+        }
+    }
+
+    public void setPosition(int index) {
+        position = index;
+    }
+
+    public String target() {
+        return target(frames.framesAt(position));
+    }
+
+    public String target(int framePops) {
+        List<TryCatchInfo> handlers = new ArrayList<>();
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < ranges.size(); i++) {
+            Range range = ranges.get(i);
+            if (position >= range.start && position < range.end) {
+                handlers.add(range.block);
+                key.append(i).append(',');
+            }
+        }
+        key.append('|').append(framePops);
+
+        return dispatches.computeIfAbsent(key.toString(),
+                k -> new Dispatch("exc_" + dispatches.size(), handlers, framePops)).label;
+    }
+
+    public String check() {
+        return "if (J2C_UNLIKELY(env->ExceptionCheck())) goto " + target() + ";";
+    }
+
+    public Collection<Dispatch> dispatches() {
+        return dispatches.values();
+    }
+
+    public static void writeRuntime(Writer out) throws IOException {
+        out.write("#if defined(__GNUC__) || defined(__clang__)\n");
+        out.write("#define J2C_UNLIKELY(x) __builtin_expect(!!(x), 0)\n");
+        out.write("#else\n");
+        out.write("#define J2C_UNLIKELY(x) (x)\n");
+        out.write("#endif\n\n");
+        out.write("static inline bool j2c_catches(JNIEnv* env, jthrowable ex, jclass cls) {\n");
+        out.write("    if (cls == nullptr) {\n");
+        out.write("        env->ExceptionClear();\n");
+        out.write("        return false;\n");
+        out.write("    }\n");
+        out.write("    return env->IsInstanceOf(ex, cls);\n");
+        out.write("}\n\n");
+    }
+
+    public static class Dispatch {
+        public final String label;
+        public final List<TryCatchInfo> handlers;
+        public final int framePops;
+
+        Dispatch(String label, List<TryCatchInfo> handlers, int framePops) {
+            this.label = label;
+            this.handlers = handlers;
+            this.framePops = framePops;
+        }
+    }
+
+    private static class Range {
+        final int start;
+        final int end;
+        final TryCatchInfo block;
+
+        Range(int start, int end, TryCatchInfo block) {
+            this.start = start;
+            this.end = end;
+            this.block = block;
+        }
+    }
+}
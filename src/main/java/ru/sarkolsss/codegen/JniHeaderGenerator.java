@@ -12,7 +12,7 @@ public class JniHeaderGenerator {
                 typeMapper.getReturnType(method.getDescriptor())
         );
 
-        sig.append("JNIEXPORT ").append(returnType).append(" JNICALL ");
+        sig.append("static ").append(returnType).append(" JNICALL ");
         sig.append(method.getJniMethodName());
         sig.append("(JNIEnv* env, jobject obj");
 
@@ -25,4 +25,12 @@ public class JniHeaderGenerator {
 
         return sig.toString();
     }
-}
\ No newline at end of file
+
+    public String generatePureSignature(NativeMethodInfo method) {
+        String returnType = typeMapper.mapJavaTypeToCpp(
+                typeMapper.getReturnType(method.getDescriptor())
+        );
+        return "static inline " + returnType + " " + method.getPureFunctionName()
+                + "(" + typeMapper.getParameters(method.getDescriptor()) + ")";
+    }
+}
@@ -98,4 +98,32 @@ public class JniHelper {
             default -> value;
         };
     }
+
+    public static String cString(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c == '?') {
+                sb.append('\\').append(c);
+            } else if (c >= 0x20 && c < 0x7f) {
+                sb.append(c);
+            } else if (c != 0 && c < 0x80) {
+                appendOctal(sb, c);
+            } else if (c < 0x800) {
+                appendOctal(sb, 0xc0 | (c >> 6));
+                appendOctal(sb, 0x80 | (c & 0x3f));
+            } else {
+                appendOctal(sb, 0xe0 | (c >> 12));
+                appendOctal(sb, 0x80 | ((c >> 6) & 0x3f));
+                appendOctal(sb, 0x80 | (c & 0x3f));
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static void appendOctal(StringBuilder sb, int b) {
+        sb.append('\\').append((char) ('0' + ((b >> 6) & 7)))
+                .append((char) ('0' + ((b >> 3) & 7)))
+                .append((char) ('0' + (b & 7)));
+    }
 }
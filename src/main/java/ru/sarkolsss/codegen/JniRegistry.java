@@ -0,0 +1,240 @@
+package ru.sarkolsss.codegen;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JniRegistry {
+    private final List<String> classes = new ArrayList<>();
+    private final Map<String, Integer> classIndex = new HashMap<>();
+    private final List<MemberRef> methods = new ArrayList<>();
+    private final Map<String, Integer> methodIndex = new HashMap<>();
+    private final List<MemberRef> fields = new ArrayList<>();
+    private final Map<String, Integer> fieldIndex = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    private int internMethod = -1;
+
+    public String classRef(String internalName) {
+        return "j2c_class(env, " + classId(internalName) + ")";
+    }
+
+    public String methodRef(String owner, String name, String descriptor, boolean isStatic) {
+        int id = memberId(methods, methodIndex, owner, name, descriptor, isStatic);
+        return "j2c_method(env, " + id + ")";
+    }
+
+    public String fieldRef(String owner, String name, String descriptor, boolean isStatic) {
+        int id = memberId(fields, fieldIndex, owner, name, descriptor, isStatic);
+        return "j2c_field(env, " + id + ")";
+    }
+
+    public String stringRef(String value) {
+        if (internMethod < 0) {
+            internMethod = memberId(methods, methodIndex, "java/lang/String", "intern",
+                    "()Ljava/lang/String;", false);
+        }
+        int id = stringIndex.computeIfAbsent(value, v -> {
+            strings.add(v);
+            return strings.size() - 1;
+        });
+        return "j2c_string(env, " + id + ")";
+    }
+
+    public int classCount() {
+        return classes.size();
+    }
+
+    public int methodCount() {
+        return methods.size();
+    }
+
+    public int fieldCount() {
+        return fields.size();
+    }
+
+    public int stringCount() {
+        return strings.size();
+    }
+
+    private int classId(String internalName) {
+        return classIndex.computeIfAbsent(internalName, name -> {
+            classes.add(name);
+            return classes.size() - 1;
+        });
+    }
+
+    private int memberId(List<MemberRef> refs, Map<String, Integer> index, String owner,
+                         String name, String descriptor, boolean isStatic) {
+        String key = (isStatic ? "static " : "") + owner + "." + name + descriptor;
+        Integer id = index.get(key);
+        if (id == null) {
+            id = refs.size();
+            refs.add(new MemberRef(classId(owner), name, descriptor, isStatic));
+            index.put(key, id);
+        }
+        return id;
+    }
+
+    public void writeDeclarations(Writer out) throws IOException {
+        out.write("#include <atomic>\n\n");
+        out.write("struct J2cMemberRef {\n");
+        out.write("    int cls;\n");
+        out.write("    const char* name;\n");
+        out.write("    const char* sig;\n");
+        out.write("    bool isStatic;\n");
+        out.write("};\n\n");
+        out.write("extern std::atomic<jclass> j2c_classes[];\n");
+        out.write("extern std::atomic<jmethodID> j2c_methods[];\n");
+        out.write("extern std::atomic<jfieldID> j2c_fields[];\n");
+        out.write("extern std::atomic<jstring> j2c_strings[];\n\n");
+        out.write("jclass j2c_resolve_class(JNIEnv* env, int index);\n");
+        out.write("jmethodID j2c_resolve_method(JNIEnv* env, int index);\n");
+        out.write("jfieldID j2c_resolve_field(JNIEnv* env, int index);\n");
+        out.write("jstring j2c_resolve_string(JNIEnv* env, int index);\n\n");
+        out.write("static inline jclass j2c_class(JNIEnv* env, int index) {\n");
+        out.write("    jclass cls = j2c_classes[index].load(std::memory_order_acquire);\n");
+        out.write("    return cls != nullptr ? cls : j2c_resolve_class(env, index);\n");
+        out.write("}\n\n");
+        out.write("static inline jmethodID j2c_method(JNIEnv* env, int index) {\n");
+        out.write("    jmethodID id = j2c_methods[index].load(std::memory_order_acquire);\n");
+        out.write("    return id != nullptr ? id : j2c_resolve_method(env, index);\n");
+        out.write("}\n\n");
+        out.write("static inline jfieldID j2c_field(JNIEnv* env, int index) {\n");
+        out.write("    jfieldID id = j2c_fields[index].load(std::memory_order_acquire);\n");
+        out.write("    return id != nullptr ? id : j2c_resolve_field(env, index);\n");
+        out.write("}\n\n");
+        out.write("static inline jstring j2c_string(JNIEnv* env, int index) {\n");
+        out.write("    jstring str = j2c_strings[index].load(std::memory_order_acquire);\n");
+        out.write("    return str != nullptr ? str : j2c_resolve_string(env, index);\n");
+        out.write("}\n\n");
+    }
+
+    public void writeDefinitions(Writer out) throws IOException {
+        out.write("static const char* const j2c_class_names[] = {\n");
+        for (String name : classes) {
+            out.write("    " + JniHelper.cString(name) + ",\n");
+        }
+        out.write("    nullptr\n};\n\n");
+
+        writeMemberTable(out, "j2c_method_refs", methods);
+        writeMemberTable(out, "j2c_field_refs", fields);
+        writeStringTable(out);
+
+        out.write("std::atomic<jclass> j2c_classes[" + Math.max(1, classes.size()) + "];\n");
+        out.write("std::atomic<jmethodID> j2c_methods[" + Math.max(1, methods.size()) + "];\n");
+        out.write("std::atomic<jfieldID> j2c_fields[" + Math.max(1, fields.size()) + "];\n");
+        out.write("std::atomic<jstring> j2c_strings[" + Math.max(1, strings.size()) + "];\n\n");
+
+        out.write("jclass j2c_resolve_class(JNIEnv* env, int index) {\n");
+        out.write("    jclass local = env->FindClass(j2c_class_names[index]);\n");
+        out.write("    if (local == nullptr) return nullptr;\n");
+        out.write("    jclass global = (jclass)env->NewGlobalRef(local);\n");
+        out.write("    env->DeleteLocalRef(local);\n");
+        out.write("    jclass expected = nullptr;\n");
+        out.write("    if (!j2c_classes[index].compare_exchange_strong(expected, global,\n");
+        out.write("            std::memory_order_acq_rel)) {\n");
+        out.write("        env->DeleteGlobalRef(global);\n");
+        out.write("        return expected;\n");
+        out.write("    }\n");
+        out.write("    return global;\n");
+        out.write("}\n\n");
+
+        out.write("jmethodID j2c_resolve_method(JNIEnv* env, int index) {\n");
+        out.write("    const J2cMemberRef& ref = j2c_method_refs[index];\n");
+        out.write("    jclass cls = j2c_class(env, ref.cls);\n");
+        out.write("    if (cls == nullptr) return nullptr;\n");
+        out.write("    jmethodID id = ref.isStatic\n");
+        out.write("            ? env->GetStaticMethodID(cls, ref.name, ref.sig)\n");
+        out.write("            : env->GetMethodID(cls, ref.name, ref.sig);\n");
+        out.write("    if (id != nullptr) j2c_methods[index].store(id, std::memory_order_release);\n");
+        out.write("    return id;\n");
+        out.write("}\n\n");
+
+        out.write("jfieldID j2c_resolve_field(JNIEnv* env, int index) {\n");
+        out.write("    const J2cMemberRef& ref = j2c_field_refs[index];\n");
+        out.write("    jclass cls = j2c_class(env, ref.cls);\n");
+        out.write("    if (cls == nullptr) return nullptr;\n");
+        out.write("    jfieldID id = ref.isStatic\n");
+        out.write("            ? env->GetStaticFieldID(cls, ref.name, ref.sig)\n");
+        out.write("            : env->GetFieldID(cls, ref.name, ref.sig);\n");
+        out.write("    if (id != nullptr) j2c_fields[index].store(id, std::memory_order_release);\n");
+        out.write("    return id;\n");
+        out.write("}\n\n");
+
+        out.write("jstring j2c_resolve_string(JNIEnv* env, int index) {\n");
+        out.write("    const J2cStringRef& ref = j2c_string_refs[index];\n");
+        out.write("    jstring local = env->NewString(j2c_string_chars + ref.offset, ref.length);\n");
+        out.write("    if (local == nullptr) return nullptr;\n");
+        out.write("    jmethodID intern = j2c_method(env, " + Math.max(0, internMethod) + ");\n");
+        out.write("    if (intern == nullptr) {\n");
+        out.write("        env->DeleteLocalRef(local);\n");
+        out.write("        return nullptr;\n");
+        out.write("    }\n");
+        out.write("    jstring interned = (jstring)env->CallObjectMethod(local, intern);\n");
+        out.write("    env->DeleteLocalRef(local);\n");
+        out.write("    if (env->ExceptionCheck()) return nullptr;\n");
+        out.write("    if (interned == nullptr) return nullptr;\n");
+        out.write("    jstring global = (jstring)env->NewGlobalRef(interned);\n");
+        out.write("    env->DeleteLocalRef(interned);\n");
+        out.write("    jstring expected = nullptr;\n");
+        out.write("    if (!j2c_strings[index].compare_exchange_strong(expected, global,\n");
+        out.write("            std::memory_order_acq_rel)) {\n");
+        out.write("        env->DeleteGlobalRef(global);\n");
+        out.write("        return expected;\n");
+        out.write("    }\n");
+        out.write("    return global;\n");
+        out.write("}\n");
+    }
+
+    private void writeStringTable(Writer out) throws IOException {
+        out.write("struct J2cStringRef {\n");
+        out.write("    int offset;\n");
+        out.write("    jsize length;\n");
+        out.write("};\n\n");
+
+        out.write("static const jchar j2c_string_chars[] = {");
+        int offset = 0;
+        StringBuilder refs = new StringBuilder();
+        for (String value : strings) {
+            for (int i = 0; i < value.length(); i++) {
+                out.write((offset + i) % 12 == 0 ? "\n    " : " ");
+                out.write(String.format("0x%04x,", (int) value.charAt(i)));
+            }
+            refs.append("    {").append(offset).append(", ").append(value.length()).append("},\n");
+            offset += value.length();
+        }
+        out.write("\n    0\n};\n\n");
+
+        out.write("static const J2cStringRef j2c_string_refs[] = {\n");
+        out.write(refs.toString());
+        out.write("    {-1, 0}\n};\n\n");
+    }
+
+    private void writeMemberTable(Writer out, String tableName, List<MemberRef> refs)
+            throws IOException {
+        out.write("static const J2cMemberRef " + tableName + "[] = {\n");
+        for (MemberRef ref : refs) {
+            out.write("    {" + ref.classId + ", " + JniHelper.cString(ref.name) + ", "
+                    + JniHelper.cString(ref.descriptor) + ", " + ref.isStatic + "},\n");
+        }
+        out.write("    {-1, nullptr, nullptr, false}\n};\n\n");
+    }
+
+    private static class MemberRef {
+        final int classId;
+        final String name;
+        final String descriptor;
+        final boolean isStatic;
+
+        MemberRef(int classId, String name, String descriptor, boolean isStatic) {
+            this.classId = classId;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.isStatic = isStatic;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package ru.sarkolsss.codegen;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import ru.sarkolsss.bytecode.InstructionInfo;
+import ru.sarkolsss.bytecode.LivenessAnalyzer;
+import ru.sarkolsss.bytecode.LoopAnalyzer;
+import ru.sarkolsss.bytecode.LoopInfo;
+import ru.sarkolsss.bytecode.MethodBodyInfo;
+import ru.sarkolsss.bytecode.TryCatchInfo;
+import java.util.*;
+import java.util.function.IntFunction;
+
+public class LocalRefFrames {
+    private static final int MIN_CAPACITY = 16;
+
+    private final List<Frame> frames = new ArrayList<>();
+    private final Set<Integer> recycledVars = new HashSet<>();
+    private final Map<Integer, String> ownedFlags = new HashMap<>();
+    private Map<Label, Integer> labelIndex = new IdentityHashMap<>();
+
+    public void clear() {
+        frames.clear();
+        recycledVars.clear();
+        ownedFlags.clear();
+        labelIndex = new IdentityHashMap<>();
+    }
+
+    public void analyze(MethodBodyInfo body) {
+        clear();
+
+        List<LoopInfo> loops = LoopAnalyzer.findLoops(body);
+        if (loops.isEmpty()) {
+            return;
+        }
+
+        List<InstructionInfo> insns = body.instructions;
+        labelIndex = LoopAnalyzer.labelIndex(insns);
+        List<BitSet> liveIn = LivenessAnalyzer.referenceLiveIn(body);
+
+        for (LoopInfo loop : loops) {
+            int created = countCreatedRefs(insns, loop);
+            if (created > 0 && canFrame(insns, loop, liveIn) && !leavesByException(body, loop)) {
+                frames.add(new Frame(loop, Math.max(MIN_CAPACITY, created)));
+            }
+        }
+
+        frames.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        findRecycledVars(insns, loops);
+    }
+
+    public boolean recycles(int var) {
+        return recycledVars.contains(var);
+    }
+
+    public void nameOwnedFlags(IntFunction<String> names) {
+        for (int var : recycledVars) {
+            ownedFlags.put(var, names.apply(var));
+        }
+    }
+
+    public void writeEntry(int index, ExceptionDispatch exceptions, StringBuilder code) {
+        int pushed = 0;
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            Frame frame = frames.get(i);
+            if (frame.loop.preheader == index) {
+                code.append("    if (J2C_UNLIKELY(env->PushLocalFrame(").append(frame.capacity).append(") < 0)) goto ")
+                        .append(exceptions.target(framesAt(index) + pushed)).append(";\n");
+                pushed++;
+            }
+        }
+    }
+
+    public void writeFallthroughExit(int index, InstructionInfo insn, StringBuilder code) {
+        if (LoopAnalyzer.endsBlock(insn.opcode)) {
+            return;
+        }
+        for (Frame frame : frames) {
+            if (frame.loop.end == index) {
+                code.append("    env->PopLocalFrame(nullptr);").append(resetFlags(frame)).append("\n");
+            }
+        }
+    }
+
+    public int framesAt(int index) {
+        int count = 0;
+        for (Frame frame : frames) {
+            if (frame.loop.contains(index)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public String wrapJump(int index, Label target, String gotoStatement, String translated,
+                           ExceptionDispatch exceptions) {
+        Integer to = labelIndex.get(target);
+        if (to == null || translated == null || !translated.contains(gotoStatement)) {
+            return translated;
+        }
+
+        StringBuilder edge = new StringBuilder();
+        int remaining = framesAt(index);
+        for (Frame frame : frames) {
+            LoopInfo loop = frame.loop;
+            if (!loop.contains(index)) {
+                continue;
+            }
+            remaining--;
+            if (!loop.contains(to)) {
+                edge.append("env->PopLocalFrame(nullptr);").append(resetFlags(frame)).append(" ");
+            } else if (to == loop.header && to <= index) {
+                edge.append("env->PopLocalFrame(nullptr);").append(resetFlags(frame))
+                        .append(" if (J2C_UNLIKELY(env->PushLocalFrame(")
+                        .append(frame.capacity).append(") < 0)) goto ").append(exceptions.target(remaining))
+                        .append("; ");
+            }
+        }
+
+        if (edge.length() == 0) {
+            return translated;
+        }
+        return translated.replace(gotoStatement, "{ " + edge + gotoStatement + " }");
+    }
+
+    private boolean canFrame(List<InstructionInfo> insns, LoopInfo loop, List<BitSet> liveIn) {
+        if (loop.preheader < 0 || loop.preheader > loop.header) {
+            return false;
+        }
+
+        Set<Integer> exits = new HashSet<>();
+        if (loop.end + 1 < insns.size() && !LoopAnalyzer.endsBlock(insns.get(loop.end).opcode)) {
+            exits.add(loop.end + 1);
+        }
+
+        for (int i = loop.header; i <= loop.end; i++) {
+            InstructionInfo insn = insns.get(i);
+            if ((insn.opcode >= Opcodes.IRETURN && insn.opcode <= Opcodes.RETURN)
+                    || insn.opcode == Opcodes.ATHROW || insn.opcode == Opcodes.JSR) {
+                return false;
+            }
+
+            for (Label target : LoopAnalyzer.targets(insn)) {
+                Integer to = labelIndex.get(target);
+                if (to == null) {
+                    return false;
+                }
+                if (!loop.contains(to)) {
+                    if (!"JUMP_INSN".equals(insn.type)) {
+                        return false;
+                    }
+                    exits.add(to);
+                }
+            }
+        }
+
+        for (int i = loop.header; i <= loop.end; i++) {
+            InstructionInfo insn = insns.get(i);
+            if (insn.opcode != Opcodes.ASTORE) {
+                continue;
+            }
+            if (liveIn.get(loop.header).get(insn.var)) {
+                return false;
+            }
+            for (int exit : exits) {
+                if (liveIn.get(exit).get(insn.var)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void findRecycledVars(List<InstructionInfo> insns, List<LoopInfo> loops) {
+        for (LoopInfo loop : loops) {
+            for (int i = loop.header; i <= loop.end; i++) {
+                if (insns.get(i).opcode == Opcodes.ASTORE) {
+                    recycledVars.add(insns.get(i).var);
+                }
+            }
+        }
+
+        for (int i = 0; i < insns.size(); i++) {
+            InstructionInfo insn = insns.get(i);
+            if (insn.opcode == Opcodes.ALOAD && escapesToCopy(insns, i)) {
+                recycledVars.remove(insn.var);
+            }
+        }
+
+        for (Frame frame : frames) {
+            for (int i = frame.loop.header; i <= frame.loop.end; i++) {
+                InstructionInfo insn = insns.get(i);
+                if (insn.opcode == Opcodes.ASTORE && recycledVars.contains(insn.var)) {
+                    frame.storedVars.add(insn.var);
+                }
+            }
+        }
+    }
+
+    private String resetFlags(Frame frame) {
+        StringBuilder reset = new StringBuilder();
+        for (int var : frame.storedVars) {
+            reset.append(" ").append(ownedFlags.get(var)).append(" = 0;");
+        }
+        return reset.toString();
+    }
+
+    private static boolean escapesToCopy(List<InstructionInfo> insns, int load) {
+        for (int i = load + 1; i < insns.size(); i++) {
+            int opcode = insns.get(i).opcode;
+            if (opcode == -1 || opcode == Opcodes.CHECKCAST) {
+                continue;
+            }
+            return opcode == Opcodes.ASTORE || opcode == Opcodes.SWAP
+                    || (opcode >= Opcodes.DUP && opcode <= Opcodes.DUP2_X2);
+        }
+        return false;
+    }
+
+    private boolean leavesByException(MethodBodyInfo body, LoopInfo loop) {
+        for (TryCatchInfo block : body.tryCatchBlocks) {
+            Integer start = labelIndex.get(block.start);
+            Integer end = labelIndex.get(block.end);
+            Integer handler = labelIndex.get(block.handler);
+            if (start == null || end == null || handler == null) {
+                return true;
+            }
+            if (start <= loop.end && end > loop.header && !loop.contains(handler)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int countCreatedRefs(List<InstructionInfo> insns, LoopInfo loop) {
+        int created = 0;
+        for (int i = loop.header; i <= loop.end; i++) {
+            InstructionInfo insn = insns.get(i);
+            if (producesLocalRef(insn) || insn.opcode == Opcodes.MULTIANEWARRAY
+                    || insn.opcode == Opcodes.INVOKEDYNAMIC) {
+                created++;
+            }
+        }
+        return created;
+    }
+
+    public static boolean producesLocalRef(InstructionInfo insn) {
+        switch (insn.opcode) {
+            case Opcodes.INVOKEVIRTUAL: case Opcodes.INVOKESPECIAL:
+            case Opcodes.INVOKESTATIC: case Opcodes.INVOKEINTERFACE:
+                return returnsReference(insn.descriptor);
+            case Opcodes.GETFIELD: case Opcodes.GETSTATIC:
+                return isReference(insn.descriptor);
+            case Opcodes.NEW: case Opcodes.NEWARRAY: case Opcodes.ANEWARRAY: case Opcodes.AALOAD:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean returnsReference(String descriptor) {
+        return isReference(descriptor.substring(descriptor.indexOf(')') + 1));
+    }
+
+    private static boolean isReference(String descriptor) {
+        return descriptor.startsWith("L") || descriptor.startsWith("[");
+    }
+
+    private static class Frame {
+        final LoopInfo loop;
+        final int capacity;
+        final Set<Integer> storedVars = new TreeSet<>();
+
+        Frame(LoopInfo loop, int capacity) {
+            this.loop = loop;
+            this.capacity = capacity;
+        }
+
+        int size() {
+            return loop.end - loop.header;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package ru.sarkolsss.codegen;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.FieldNode;
+import ru.sarkolsss.bytecode.ClassIndex;
+import ru.sarkolsss.bytecode.InstructionInfo;
+import ru.sarkolsss.bytecode.LoopAnalyzer;
+import ru.sarkolsss.bytecode.LoopInfo;
+import ru.sarkolsss.bytecode.MethodBodyInfo;
+import ru.sarkolsss.bytecode.NativeMethodInfo;
+import java.util.*;
+import java.util.function.IntFunction;
+
+public class LoopInvariantHoister {
+    private final ClassIndex classIndex;
+    private final TypeMapper typeMapper;
+    private final JniHelper jniHelper;
+    private final JniRegistry registry;
+
+    private final List<Hoisted> hoisted = new ArrayList<>();
+    private final Map<String, Hoisted> byKey = new HashMap<>();
+    private final Map<Integer, List<Hoisted>> byPreheader = new HashMap<>();
+    private final Map<Integer, Chain> chains = new HashMap<>();
+
+    public LoopInvariantHoister(ClassIndex classIndex, TypeMapper typeMapper,
+                                JniHelper jniHelper, JniRegistry registry) {
+        this.classIndex = classIndex;
+        this.typeMapper = typeMapper;
+        this.jniHelper = jniHelper;
+        this.registry = registry;
+    }
+
+    public void clear() {
+        hoisted.clear();
+        byKey.clear();
+        byPreheader.clear();
+        chains.clear();
+    }
+
+    public void analyze(MethodBodyInfo body, NativeMethodInfo method) {
+        clear();
+
+        List<LoopInfo> loops = LoopAnalyzer.findLoops(body);
+        if (loops.isEmpty()) {
+            return;
+        }
+
+        boolean constructor = method.getMethodName().equals("<init>")
+                || method.getMethodName().equals("<clinit>");
+        List<InstructionInfo> insns = body.instructions;
+
+        for (int i = 0; i + 1 < insns.size(); i++) {
+            InstructionInfo load = insns.get(i);
+            if (load.opcode != Opcodes.ALOAD) {
+                continue;
+            }
+
+            InstructionInfo next = insns.get(i + 1);
+            InstructionInfo field = null;
+            boolean length = false;
+            int end = i + 1;
+
+            if (next.opcode == Opcodes.ARRAYLENGTH) {
+                length = true;
+            } else if (next.opcode == Opcodes.GETFIELD && !constructor && isFinalField(next)) {
+                field = next;
+                if (i + 2 < insns.size() && insns.get(i + 2).opcode == Opcodes.ARRAYLENGTH
+                        && next.descriptor.startsWith("[")) {
+                    length = true;
+                    end = i + 2;
+                }
+            } else {
+                continue;
+            }
+
+            LoopInfo loop = outermostInvariantLoop(loops, i, end, load.var);
+            if (loop == null) {
+                continue;
+            }
+
+            Hoisted value = null;
+            if (field != null) {
+                value = hoist(loop.preheader, load.var, field, null, false);
+            }
+            if (length) {
+                value = hoist(loop.preheader, load.var, null, value, true);
+            }
+            chains.put(i, new Chain(end, value));
+        }
+    }
+
+    public void writeDeclarations(StringBuilder code) {
+        for (Hoisted value : hoisted) {
+            code.append("    ").append(value.cppType).append(" ").append(value.name)
+                    .append(" = ").append(value.defaultValue).append(";\n");
+        }
+    }
+
+    public void writeLoads(int index, IntFunction<String> locals, ExceptionDispatch exceptions, StringBuilder code) {
+        List<Hoisted> values = byPreheader.get(index);
+        if (values == null) {
+            return;
+        }
+
+        for (Hoisted value : values) {
+            String source;
+            if (value.base != null) {
+                if (!value.base.active) {
+                    continue;
+                }
+                source = value.base.name;
+            } else {
+                source = locals.apply(value.var);
+            }
+
+            if (value.arrayLength) {
+                code.append("    ").append(value.name).append(" = ").append(source)
+                        .append(" != nullptr ? env->GetArrayLength((jarray)").append(source)
+                        .append(") : 0;\n");
+            } else {
+                String fid = "hfid_" + value.name;
+                code.append("    if (").append(source).append(" != nullptr) {\n");
+                code.append("        jfieldID ").append(fid).append(" = ")
+                        .append(registry.fieldRef(value.field.owner, value.field.name,
+                                value.field.descriptor, false)).append(";\n");
+                code.append("        if (J2C_UNLIKELY(").append(fid).append(" == nullptr)) goto ")
+                        .append(exceptions.target()).append(";\n");
+                code.append("        ").append(value.name)
+                        .append(" = env->").append(jniHelper.getFieldMethod(value.field.descriptor))
+                        .append("(").append(source).append(", ").append(fid).append(");\n");
+                code.append("    }\n");
+            }
+            value.active = true;
+        }
+    }
+
+    public int chainEnd(int index) {
+        Chain chain = chains.get(index);
+        return chain != null && chain.value.active ? chain.end : -1;
+    }
+
+    public String chainValue(int index) {
+        return chains.get(index).value.name;
+    }
+
+    public int chainVar(int index) {
+        return chains.get(index).value.var;
+    }
+
+    public String chainBase(int index) {
+        Hoisted base = chains.get(index).value.base;
+        return base != null ? base.name : null;
+    }
+
+    private boolean isFinalField(InstructionInfo insn) {
+        FieldNode field = classIndex.findField(insn.owner, insn.name, insn.descriptor);
+        return field != null && (field.access & Opcodes.ACC_FINAL) != 0
+                && (field.access & Opcodes.ACC_STATIC) == 0;
+    }
+
+    private LoopInfo outermostInvariantLoop(List<LoopInfo> loops, int start, int end, int var) {
+        LoopInfo best = null;
+        for (LoopInfo loop : loops) {
+            if (!loop.contains(start) || !loop.contains(end)) {
+                continue;
+            }
+            if (loop.preheader < 0 || loop.preheader > loop.header || loop.storedVars.contains(var)) {
+                continue;
+            }
+            if (best == null || loop.contains(best)) {
+                best = loop;
+            }
+        }
+        return best;
+    }
+
+    private Hoisted hoist(int preheader, int var, InstructionInfo field, Hoisted base, boolean arrayLength) {
+        String key = preheader + ":" + var + ":"
+                + (base != null ? base.name : "") + ":"
+                + (field != null ? field.owner + "." + field.name + field.descriptor : "")
+                + (arrayLength ? ":length" : "");
+        Hoisted existing = byKey.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        Hoisted value = new Hoisted();
+        value.name = "hoist_" + hoisted.size();
+        value.var = var;
+        value.field = field;
+        value.base = base;
+        value.arrayLength = arrayLength;
+        if (arrayLength) {
+            value.cppType = "jsize";
+            value.defaultValue = "0";
+        } else {
+            String javaType = typeMapper.parseType(field.descriptor);
+            value.cppType = typeMapper.mapJavaTypeToCpp(javaType);
+            value.defaultValue = typeMapper.getDefaultValue(javaType);
+        }
+
+        hoisted.add(value);
+        byKey.put(key, value);
+        byPreheader.computeIfAbsent(preheader, k -> new ArrayList<>()).add(value);
+        return value;
+    }
+
+    private static class Hoisted {
+        String name;
+        String cppType;
+        String defaultValue;
+        int var;
+        InstructionInfo field;
+        Hoisted base;
+        boolean arrayLength;
+        boolean active;
+    }
+
+    private static class Chain {
+        final int end;
+        final Hoisted value;
+
+        Chain(int end, Hoisted value) {
+            this.end = end;
+            this.value = value;
+        }
+    }
+}
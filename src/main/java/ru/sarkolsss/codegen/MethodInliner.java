@@ -0,0 +1,131 @@
+package ru.sarkolsss.codegen;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+import ru.sarkolsss.bytecode.ClassIndex;
+import ru.sarkolsss.bytecode.InstructionInfo;
+import ru.sarkolsss.bytecode.MethodBodyAnalyzer;
+import ru.sarkolsss.bytecode.MethodBodyInfo;
+import java.util.HashMap;
+import java.util.Map;
+
+public class MethodInliner {
+    public static final int DEFAULT_BUDGET = 8;
+
+    private final ClassIndex classIndex;
+    private final int budget;
+    private final Map<String, MethodBodyInfo> cache = new HashMap<>();
+    private int inlinedCalls;
+
+    public MethodInliner(ClassIndex classIndex, int budget) {
+        this.classIndex = classIndex;
+        this.budget = budget;
+    }
+
+    public MethodBodyInfo resolve(InstructionInfo insn, String callerClass) {
+        MethodBodyInfo body = find(insn, callerClass);
+        if (body != null) {
+            inlinedCalls++;
+        }
+        return body;
+    }
+
+    public MethodBodyInfo find(InstructionInfo insn, String callerClass) {
+        if (budget <= 0 || insn.owner == null || insn.owner.startsWith("[")) {
+            return null;
+        }
+
+        String key = insn.owner + "." + insn.name + insn.descriptor;
+        MethodBodyInfo body = cache.computeIfAbsent(key, k -> analyze(insn));
+        if (body == null || !canDispatchStatically(insn, callerClass)) {
+            return null;
+        }
+        return body;
+    }
+
+    public int inlinedCallCount() {
+        return inlinedCalls;
+    }
+
+    private MethodBodyInfo analyze(InstructionInfo insn) {
+        if (!classIndex.isInput(insn.owner)) {
+            return null;
+        }
+        MethodNode method = classIndex.findMethod(insn.owner, insn.name, insn.descriptor);
+        if (method == null || method.name.startsWith("<")
+                || (method.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE | Opcodes.ACC_SYNCHRONIZED)) != 0
+                || (method.tryCatchBlocks != null && !method.tryCatchBlocks.isEmpty())) {
+            return null;
+        }
+        if (((method.access & Opcodes.ACC_STATIC) != 0) != (insn.opcode == Opcodes.INVOKESTATIC)) {
+            return null;
+        }
+
+        int size = 0;
+        AbstractInsnNode last = null;
+        for (AbstractInsnNode node : method.instructions) {
+            int op = node.getOpcode();
+            if (op == -1) {
+                continue;
+            }
+            if (!isInlinable(op) || last != null && isReturn(last.getOpcode()) || isVolatileAccess(node)) {
+                return null;
+            }
+            last = node;
+            size++;
+        }
+
+        if (last == null || !isReturn(last.getOpcode()) || size > budget) {
+            return null;
+        }
+        return MethodBodyAnalyzer.analyzeMethod(method, insn.owner);
+    }
+
+    private boolean canDispatchStatically(InstructionInfo insn, String callerClass) {
+        switch (insn.opcode) {
+            case Opcodes.INVOKESTATIC:
+                return insn.owner.equals(callerClass);
+            case Opcodes.INVOKESPECIAL:
+                return true;
+            case Opcodes.INVOKEVIRTUAL:
+                MethodNode method = classIndex.findMethod(insn.owner, insn.name, insn.descriptor);
+                ClassNode owner = classIndex.getClass(insn.owner);
+                return (method.access & (Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL)) != 0
+                        || (owner.access & Opcodes.ACC_FINAL) != 0;
+            default:
+                return false;
+        }
+    }
+
+    private boolean isVolatileAccess(AbstractInsnNode node) {
+        if (!(node instanceof FieldInsnNode insn)) {
+            return false;
+        }
+        FieldNode field = classIndex.findField(insn.owner, insn.name, insn.desc);
+        return field == null || (field.access & Opcodes.ACC_VOLATILE) != 0;
+    }
+
+    private static boolean isReturn(int op) {
+        return op >= Opcodes.IRETURN && op <= Opcodes.RETURN;
+    }
+
+    private static boolean isInlinable(int op) {
+        if (op >= Opcodes.IFEQ && op <= Opcodes.LOOKUPSWITCH) {
+            return false;
+        }
+        switch (op) {
+            case Opcodes.INVOKEVIRTUAL: case Opcodes.INVOKESPECIAL: case Opcodes.INVOKESTATIC:
+            case Opcodes.INVOKEINTERFACE: case Opcodes.INVOKEDYNAMIC:
+            case Opcodes.ATHROW: case Opcodes.MONITORENTER: case Opcodes.MONITOREXIT:
+            case Opcodes.MULTIANEWARRAY: case Opcodes.IFNULL: case Opcodes.IFNONNULL:
+            case Opcodes.NEW:
+                return false;
+            default:
+                return true;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ru.sarkolsss.codegen;
+
+import ru.sarkolsss.bytecode.NativeMethodInfo;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class NativeBindingTable {
+    private final Map<String, List<String>> bindings = new LinkedHashMap<>();
+
+    public void bind(NativeMethodInfo method, String functionName) {
+        bindings.computeIfAbsent(method.getClassName(), k -> new ArrayList<>())
+                .add("    {const_cast<char*>(" + JniHelper.cString(method.getMethodName())
+                        + "), const_cast<char*>(" + JniHelper.cString(method.getDescriptor())
+                        + "), (void*)&" + functionName + "},\n");
+    }
+
+    public int classCount() {
+        return bindings.size();
+    }
+
+    public void writeRegistration(Writer out) throws IOException {
+        List<String> tables = new ArrayList<>();
+        int tableIndex = 0;
+
+        for (Map.Entry<String, List<String>> entry : bindings.entrySet()) {
+            String tableName = "j2c_natives_" + tableIndex++;
+            out.write("static JNINativeMethod " + tableName + "[] = {\n");
+            for (String binding : entry.getValue()) {
+                out.write(binding);
+            }
+            out.write("};\n\n");
+            tables.add("    {" + JniHelper.cString(entry.getKey()) + ", " + tableName + ", "
+                    + entry.getValue().size() + "},\n");
+        }
+
+        out.write("struct J2cNativeClass {\n");
+        out.write("    const char* name;\n");
+        out.write("    JNINativeMethod* methods;\n");
+        out.write("    jint count;\n");
+        out.write("};\n\n");
+        out.write("static const J2cNativeClass j2c_native_classes[] = {\n");
+        for (String table : tables) {
+            out.write(table);
+        }
+        out.write("    {nullptr, nullptr, 0}\n};\n\n");
+
+        out.write("extern \"C\" JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM* vm, void* reserved) {\n");
+        out.write("    JNIEnv* env = nullptr;\n");
+        out.write("    if (vm->GetEnv((void**)&env, JNI_VERSION_1_6) != JNI_OK) return JNI_ERR;\n");
+        out.write("    return JNI_VERSION_1_6;\n");
+        out.write("}\n\n");
+
+        out.write("extern \"C\" JNIEXPORT void JNICALL Java_ru_sarkolsss_NativeLoader_registerNatives("
+                + "JNIEnv* env, jclass, jclass cls, jstring name) {\n");
+        out.write("    const char* utf = env->GetStringUTFChars(name, nullptr);\n");
+        out.write("    if (utf == nullptr) return;\n");
+        out.write("    std::string className(utf);\n");
+        out.write("    env->ReleaseStringUTFChars(name, utf);\n\n");
+        out.write("    for (const J2cNativeClass* entry = j2c_native_classes; entry->name != nullptr; entry++) {\n");
+        out.write("        if (className == entry->name) {\n");
+        out.write("            env->RegisterNatives(cls, entry->methods, entry->count);\n");
+        out.write("            return;\n");
+        out.write("        }\n");
+        out.write("    }\n\n");
+        out.write("    jclass error = env->FindClass(\"java/lang/UnsatisfiedLinkError\");\n");
+        out.write("    if (error != nullptr) {\n");
+        out.write("        env->ThrowNew(error, (\"No native methods compiled for \" + className).c_str());\n");
+        out.write("    }\n");
+        out.write("}\n");
+    }
+}
@@ -0,0 +1,104 @@
+package ru.sarkolsss.codegen;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import ru.sarkolsss.bytecode.ClassIndex;
+import ru.sarkolsss.bytecode.InstructionInfo;
+import ru.sarkolsss.bytecode.NativeMethodInfo;
+import java.util.*;
+
+public class NativeCallTable {
+    public static final int FRAME_CAPACITY = 32;
+
+    private final ClassIndex classIndex;
+    private final Map<String, Target> targets = new HashMap<>();
+    private final Map<String, Set<String>> callees = new HashMap<>();
+    private int directCalls;
+
+    public NativeCallTable(ClassIndex classIndex) {
+        this.classIndex = classIndex;
+    }
+
+    public void register(NativeMethodInfo method, NativeMethodInfo implementation, boolean pure,
+                         Collection<String> calls) {
+        Target target = new Target();
+        target.access = method.getAccess();
+        target.function = pure ? implementation.getPureFunctionName() : implementation.getJniMethodName();
+        target.pure = pure;
+        targets.put(key(method.getClassName(), method.getMethodName(), method.getDescriptor()), target);
+        callees.computeIfAbsent(target.function, k -> new HashSet<>()).addAll(calls);
+    }
+
+    public static Set<String> calls(List<InstructionInfo> instructions) {
+        Set<String> calls = new HashSet<>();
+        for (InstructionInfo insn : instructions) {
+            if (insn.opcode >= Opcodes.INVOKEVIRTUAL && insn.opcode <= Opcodes.INVOKEINTERFACE) {
+                calls.add(key(insn.owner, insn.name, insn.descriptor));
+            }
+        }
+        return calls;
+    }
+
+    public Target resolve(InstructionInfo insn, String callerClass, String callerFunction) {
+        Target target = targets.get(key(insn.owner, insn.name, insn.descriptor));
+        if (target == null || (target.access & Opcodes.ACC_SYNCHRONIZED) != 0
+                || reaches(target.function, callerFunction)) {
+            return null;
+        }
+
+        boolean isStatic = (target.access & Opcodes.ACC_STATIC) != 0;
+        boolean safe = switch (insn.opcode) {
+            case Opcodes.INVOKESTATIC -> isStatic && insn.owner.equals(callerClass);
+            case Opcodes.INVOKESPECIAL -> !isStatic;
+            case Opcodes.INVOKEVIRTUAL -> !isStatic
+                    && ((target.access & (Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL)) != 0 || isFinalClass(insn.owner));
+            default -> false;
+        };
+
+        if (!safe) {
+            return null;
+        }
+        directCalls++;
+        return target;
+    }
+
+    public int directCallCount() {
+        return directCalls;
+    }
+
+    private boolean reaches(String from, String to) {
+        Set<String> visited = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(List.of(from));
+        while (!pending.isEmpty()) {
+            String function = pending.poll();
+            if (function.equals(to)) {
+                return true;
+            }
+            if (!visited.add(function)) {
+                continue;
+            }
+            for (String call : callees.getOrDefault(function, Set.of())) {
+                Target callee = targets.get(call);
+                if (callee != null) {
+                    pending.add(callee.function);
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isFinalClass(String className) {
+        ClassNode node = classIndex.getClass(className);
+        return node != null && (node.access & Opcodes.ACC_FINAL) != 0;
+    }
+
+    private static String key(String owner, String name, String descriptor) {
+        return owner + "." + name + descriptor;
+    }
+
+    public static class Target {
+        public String function;
+        public boolean pure;
+        public int access;
+    }
+}
@@ -87,6 +87,10 @@ public class TypeMapper {
     private int getTypeLength(String desc, int index) {
         char c = desc.charAt(index);
 
+        if (c == '[') {
+            return 1 + getTypeLength(desc, index + 1);
+        }
+
         if (c == 'L') {
             return desc.indexOf(';', index) - index + 1;
         }
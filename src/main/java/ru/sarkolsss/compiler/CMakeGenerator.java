@@ -19,7 +19,13 @@ public class CMakeGenerator {
         cmake.append("cmake_minimum_required(VERSION 3.20)\n");
         cmake.append("project(java2cpp_native)\n\n");
         cmake.append("set(CMAKE_CXX_STANDARD 17)\n");
-        cmake.append("set(CMAKE_CXX_STANDARD_REQUIRED ON)\n\n");
+        cmake.append("set(CMAKE_CXX_STANDARD_REQUIRED ON)\n");
+        cmake.append("set(CMAKE_CXX_VISIBILITY_PRESET hidden)\n");
+        cmake.append("set(CMAKE_VISIBILITY_INLINES_HIDDEN ON)\n\n");
+        cmake.append("if(MSVC)\n");
+        cmake.append("    add_compile_options(/Brepro)\n");
+        cmake.append("    add_link_options(/Brepro)\n");
+        cmake.append("endif()\n\n");
         cmake.append("find_package(JNI REQUIRED)\n\n");
         cmake.append("include_directories(${JNI_INCLUDE_DIRS})\n\n");
         cmake.append("add_library(java2cpp_native SHARED native.cpp)\n");
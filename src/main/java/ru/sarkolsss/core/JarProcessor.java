@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -35,6 +36,11 @@ public class JarProcessor {
 
                     if (entry.isDirectory()) {
                         Files.createDirectories(entryPath);
+                    } else if (Files.exists(entryPath)) {
+                        if (entry.getName().endsWith(".class")) {
+                            Logger.warning("Duplicate class " + entry.getName() + " in "
+                                    + jarPath.getFileName() + ", keeping the first definition");
+                        }
                     } else {
                         Files.createDirectories(entryPath.getParent());
                         Files.copy(jar.getInputStream(entry), entryPath);
@@ -46,6 +52,7 @@ public class JarProcessor {
                 }
             }
 
+            Collections.sort(classFiles);
             Logger.detail("Extracted " + classFiles.size() + " class files");
         } catch (IOException e) {
             Logger.error("Failed to process JAR: " + e.getMessage());
@@ -1,61 +1,108 @@
 package ru.sarkolsss.core;
 
 import ru.sarkolsss.bytecode.BytecodeAnalyzer;
+import ru.sarkolsss.bytecode.ClassHierarchy;
+import ru.sarkolsss.bytecode.ClassIndex;
+import ru.sarkolsss.bytecode.NativeMethodInfo;
+import ru.sarkolsss.bytecode.ProfileSelector;
+import ru.sarkolsss.bytecode.ReachabilityAnalyzer;
 import ru.sarkolsss.codegen.CppGenerator;
+import ru.sarkolsss.codegen.MethodInliner;
 import ru.sarkolsss.compiler.CMakeGenerator;
 import ru.sarkolsss.compiler.VisualStudioCompiler;
 import ru.sarkolsss.packager.JarRepackager;
+import ru.sarkolsss.packager.NativeMethodModifier;
 import ru.sarkolsss.utils.Logger;
 import ru.sarkolsss.utils.FileUtils;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
 public class TranspilerEngine {
-    private final Path inputJar;
-    private final Path outputJar;
+    private final List<Path> inputJars;
+    private final List<Path> outputJars;
     private final Path workDir;
-    private final boolean skipAnnotationCheck;
+    private final TranspilerOptions options;
 
     static {
         System.setProperty("java.awt.headless", "true");
     }
 
-    public TranspilerEngine(Path inputJar, Path outputJar, boolean skipAnnotationCheck) {
-        this.inputJar = inputJar;
-        this.outputJar = outputJar;
+    public TranspilerEngine(Path inputJar, Path outputJar, TranspilerOptions options) {
+        this(List.of(inputJar), List.of(outputJar), options);
+    }
+
+    public TranspilerEngine(List<Path> inputJars, List<Path> outputJars, TranspilerOptions options) {
+        if (inputJars.size() != outputJars.size()) {
+            throw new IllegalArgumentException("Each input JAR needs exactly one output JAR");
+        }
+        this.inputJars = inputJars;
+        this.outputJars = outputJars;
         this.workDir = Path.of("transpiler_temp_" + System.currentTimeMillis());
-        this.skipAnnotationCheck = skipAnnotationCheck;
+        this.options = options;
     }
 
     public void execute() {
         try {
             Logger.info("Starting transpilation process...");
 
-            if (skipAnnotationCheck) {
+            if (options.skipAnnotationCheck) {
                 Logger.warning("Annotation check disabled - processing ALL methods");
             }
 
-            JarProcessor jarProcessor = new JarProcessor(inputJar, workDir);
-            Logger.step("Processing JAR file...");
-            List<String> classes = jarProcessor.extractAndAnalyze();
+            Logger.step("Processing JAR files...");
+            List<String> classes = new ArrayList<>();
+            List<Set<String>> classesPerJar = new ArrayList<>();
+            for (Path inputJar : inputJars) {
+                JarProcessor jarProcessor = new JarProcessor(inputJar, workDir);
+                List<String> extracted = jarProcessor.extractAndAnalyze();
+                classes.addAll(extracted);
+                classesPerJar.add(new HashSet<>(extracted));
+            }
+            Collections.sort(classes);
 
             if (classes.isEmpty()) {
                 Logger.error("No class files found in JAR");
                 return;
             }
 
-            BytecodeAnalyzer analyzer = new BytecodeAnalyzer(workDir, skipAnnotationCheck);
+            MethodInliner inliner = new MethodInliner(new ClassIndex(workDir), options.inlineBudget);
+            BytecodeAnalyzer analyzer = new BytecodeAnalyzer(workDir, options.skipAnnotationCheck,
+                    options.maxJniSlowdown, options.keepJniBound, inliner::find);
             Logger.step("Analyzing bytecode...");
-            var nativeMethods = analyzer.findNativeMethods(classes);
+            var nativeMethods = options.profiles.isEmpty()
+                    ? analyzer.findNativeMethods(classes)
+                    : analyzer.collectMethods(classes);
+
+            if (!options.profiles.isEmpty()) {
+                Logger.step("Selecting hot methods from JFR profiles...");
+                nativeMethods = selectFromProfiles(classes, analyzer, inliner, nativeMethods);
+            }
+
+            if (options.shrink) {
+                Logger.step("Computing reachable methods...");
+                nativeMethods = filterReachable(classes, nativeMethods);
+            }
 
             if (nativeMethods.isEmpty()) {
-                Logger.info("No methods found for transpilation, copying original JAR...");
-                java.nio.file.Files.copy(inputJar, outputJar,
-                        java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                Logger.info("No methods found for transpilation, copying original JARs...");
+                for (int i = 0; i < inputJars.size(); i++) {
+                    Files.copy(inputJars.get(i), outputJars.get(i),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
                 return;
             }
 
-            CppGenerator cppGen = new CppGenerator(workDir);
+            CppGenerator cppGen = new CppGenerator(workDir, options.inlineBudget);
             Logger.step("Generating C++ code...");
             cppGen.generate(nativeMethods);
 
@@ -67,9 +114,26 @@ public class TranspilerEngine {
             Logger.step("Compiling with Visual Studio 2022...");
             Path dllPath = compiler.compile();
 
-            JarRepackager repackager = new JarRepackager(inputJar, outputJar, workDir);
-            Logger.step("Repackaging JAR with native library...");
-            repackager.repackage(dllPath, nativeMethods);
+            Logger.step("Indexing class hierarchy...");
+            ClassHierarchy hierarchy = ClassHierarchy.build(workDir, classes, options.libraryJars);
+
+            Logger.step("Rewriting transpiled methods as native...");
+            new NativeMethodModifier(workDir, nativeMethods, hierarchy).modifyClasses();
+
+            for (int i = 0; i < inputJars.size(); i++) {
+                Set<String> jarClasses = classesPerJar.get(i);
+                List<NativeMethodInfo> jarMethods = new ArrayList<>();
+                for (NativeMethodInfo method : nativeMethods) {
+                    if (jarClasses.contains(method.getClassName() + ".class")) {
+                        jarMethods.add(method);
+                    }
+                }
+
+                JarRepackager repackager = new JarRepackager(
+                        inputJars.get(i), outputJars.get(i), workDir, hierarchy);
+                Logger.step("Repackaging " + inputJars.get(i).getFileName() + " with native library...");
+                repackager.repackage(dllPath, jarMethods);
+            }
 
         } catch (Exception e) {
             Logger.error("Transpilation failed: " + e.getMessage());
@@ -80,4 +144,53 @@ public class TranspilerEngine {
             FileUtils.deleteDirectory(workDir);
         }
     }
-}
\ No newline at end of file
+
+    private List<NativeMethodInfo> selectFromProfiles(List<String> classes, BytecodeAnalyzer analyzer,
+                                                      MethodInliner inliner, List<NativeMethodInfo> nativeMethods)
+            throws IOException {
+        ProfileSelector selector = new ProfileSelector(workDir, options.profileBudget,
+                options.maxJniSlowdown, options.keepJniBound, inliner::find);
+        for (Path profile : options.profiles) {
+            selector.addRecording(profile);
+        }
+
+        List<NativeMethodInfo> candidates = options.skipAnnotationCheck
+                ? nativeMethods
+                : new BytecodeAnalyzer(workDir, true).collectMethods(classes);
+        List<NativeMethodInfo> required = options.skipAnnotationCheck
+                ? List.of()
+                : analyzer.applyCostModel(nativeMethods);
+        return selector.select(candidates, required);
+    }
+
+    private List<NativeMethodInfo> filterReachable(List<String> classes,
+                                                   List<NativeMethodInfo> nativeMethods)
+            throws IOException {
+        ReachabilityAnalyzer reachability = new ReachabilityAnalyzer(workDir, classes);
+
+        for (Path inputJar : inputJars) {
+            try (JarFile jar = new JarFile(inputJar.toFile())) {
+                Manifest manifest = jar.getManifest();
+                String mainClass = manifest != null
+                        ? manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS)
+                        : null;
+                if (mainClass != null) {
+                    Logger.detail("Reachability root: " + mainClass + " (Main-Class)");
+                    reachability.addMainClass(mainClass);
+                }
+            }
+        }
+
+        for (String entryPoint : options.entryPoints) {
+            Logger.detail("Reachability root: " + entryPoint);
+            reachability.addRoot(entryPoint);
+        }
+
+        if (!reachability.hasRoots()) {
+            Logger.warning("--shrink: no reachability roots (no Main-Class and no --entry found), "
+                    + "keeping all " + nativeMethods.size() + " methods");
+            return nativeMethods;
+        }
+        return reachability.filter(nativeMethods);
+    }
+}
@@ -0,0 +1,20 @@
+package ru.sarkolsss.core;
+
+import ru.sarkolsss.bytecode.JniCostModel;
+import ru.sarkolsss.bytecode.ProfileSelector;
+import ru.sarkolsss.codegen.MethodInliner;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TranspilerOptions {
+    public boolean skipAnnotationCheck;
+    public List<Path> libraryJars = new ArrayList<>();
+    public boolean shrink;
+    public List<String> entryPoints = new ArrayList<>();
+    public int inlineBudget = MethodInliner.DEFAULT_BUDGET;
+    public List<Path> profiles = new ArrayList<>();
+    public int profileBudget = ProfileSelector.DEFAULT_BUDGET;
+    public double maxJniSlowdown = JniCostModel.DEFAULT_MAX_SLOWDOWN;
+    public boolean keepJniBound;
+}
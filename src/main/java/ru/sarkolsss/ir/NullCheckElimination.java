@@ -0,0 +1,123 @@
+package ru.sarkolsss.ir;
+
+import org.objectweb.asm.Opcodes;
+import ru.sarkolsss.bytecode.InstructionInfo;
+import java.util.*;
+
+public class NullCheckElimination {
+    private final BitSet redundant = new BitSet();
+
+    public void clear() {
+        redundant.clear();
+    }
+
+    public void analyze(SsaMethod ssa, List<InstructionInfo> insns, BitSet skipped) {
+        clear();
+        propagatePhis(ssa);
+
+        Map<SsaValue, List<Integer>> checks = new HashMap<>();
+        for (int i = 0; i < insns.size(); i++) {
+            SsaValue receiver = receiver(ssa, insns.get(i), i);
+            if (receiver != null && !skipped.get(i)) {
+                checks.computeIfAbsent(receiver, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        Map<SsaBlock, Set<SsaValue>> facts = branchFacts(ssa, insns);
+        for (Map.Entry<SsaValue, List<Integer>> entry : checks.entrySet()) {
+            SsaValue value = entry.getKey();
+            for (int check : entry.getValue()) {
+                if (value.nonNull || dominatedByCheck(ssa, check, entry.getValue())
+                        || dominatedByFact(ssa, check, value, facts)) {
+                    redundant.set(check);
+                }
+            }
+        }
+    }
+
+    public boolean isRedundant(int index) {
+        return index >= 0 && redundant.get(index);
+    }
+
+    private static SsaValue receiver(SsaMethod ssa, InstructionInfo insn, int index) {
+        if (!dereferences(insn.opcode)) {
+            return null;
+        }
+        List<SsaValue> operands = ssa.operands(index);
+        return operands.isEmpty() ? null : operands.get(0);
+    }
+
+    private static boolean dominatedByCheck(SsaMethod ssa, int check, List<Integer> others) {
+        for (int other : others) {
+            if (other != check && ssa.dominates(other, check)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean dominatedByFact(SsaMethod ssa, int check, SsaValue value,
+                                           Map<SsaBlock, Set<SsaValue>> facts) {
+        for (SsaBlock block = ssa.blockOf(check); block != null; block = block.idom) {
+            if (facts.getOrDefault(block, Set.of()).contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<SsaBlock, Set<SsaValue>> branchFacts(SsaMethod ssa, List<InstructionInfo> insns) {
+        Map<SsaBlock, Set<SsaValue>> facts = new HashMap<>();
+        for (SsaBlock block : ssa.blocks) {
+            int last = block.end - 1;
+            int opcode = insns.get(last).opcode;
+            if (!block.reachable || (opcode != Opcodes.IFNULL && opcode != Opcodes.IFNONNULL)
+                    || block.successors.size() != 2 || ssa.operands(last).isEmpty()) {
+                continue;
+            }
+
+            SsaBlock fallthrough = ssa.blockOf(block.end);
+            SsaBlock nonNull = null;
+            for (SsaBlock successor : block.successors) {
+                if ((successor != fallthrough) == (opcode == Opcodes.IFNONNULL)) {
+                    nonNull = successor;
+                }
+            }
+            if (nonNull != null && nonNull.predecessors.size() == 1 && !nonNull.handler) {
+                facts.computeIfAbsent(nonNull, k -> new HashSet<>()).add(ssa.operands(last).get(0));
+            }
+        }
+        return facts;
+    }
+
+    private static void propagatePhis(SsaMethod ssa) {
+        List<SsaValue> phis = new ArrayList<>();
+        for (SsaBlock block : ssa.blocks) {
+            for (SsaValue phi : block.phis) {
+                phi.nonNull = phi.type == 'A' && !phi.operands.isEmpty();
+                phis.add(phi);
+            }
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (SsaValue phi : phis) {
+                if (phi.nonNull && phi.operands.stream().anyMatch(operand -> !operand.nonNull)) {
+                    phi.nonNull = false;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private static boolean dereferences(int opcode) {
+        return switch (opcode) {
+            case Opcodes.GETFIELD, Opcodes.PUTFIELD, Opcodes.INVOKEVIRTUAL, Opcodes.INVOKESPECIAL,
+                 Opcodes.INVOKEINTERFACE, Opcodes.ARRAYLENGTH, Opcodes.ATHROW,
+                 Opcodes.MONITORENTER, Opcodes.MONITOREXIT -> true;
+            default -> (opcode >= Opcodes.IALOAD && opcode <= Opcodes.SALOAD)
+                    || (opcode >= Opcodes.IASTORE && opcode <= Opcodes.SASTORE);
+        };
+    }
+}
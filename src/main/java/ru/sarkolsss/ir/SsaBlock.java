@@ -0,0 +1,21 @@
+package ru.sarkolsss.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SsaBlock {
+    public int id;
+    public int start;
+    public int end;
+    public boolean handler;
+    public boolean reachable;
+    public SsaBlock idom;
+    public List<SsaBlock> predecessors = new ArrayList<>();
+    public List<SsaBlock> successors = new ArrayList<>();
+    public List<SsaValue> phis = new ArrayList<>();
+
+    @Override
+    public String toString() {
+        return "b" + id;
+    }
+}
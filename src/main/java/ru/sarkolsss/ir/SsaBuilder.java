@@ -0,0 +1,658 @@
+package ru.sarkolsss.ir;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import ru.sarkolsss.bytecode.InstructionInfo;
+import ru.sarkolsss.bytecode.LoopAnalyzer;
+import ru.sarkolsss.bytecode.MethodBodyInfo;
+import ru.sarkolsss.bytecode.TryCatchInfo;
+import java.util.*;
+
+public class SsaBuilder {
+    private static final long SNAPSHOT_LIMIT = 1 << 21;
+
+    private final MethodBodyInfo body;
+    private final List<InstructionInfo> insns;
+    private final SsaMethod method = new SsaMethod();
+    private final Map<SsaValue, SsaValue> forwarded = new HashMap<>();
+    private int maxLocals;
+
+    private SsaBuilder(MethodBodyInfo body) {
+        this.body = body;
+        this.insns = body.instructions;
+    }
+
+    public static SsaMethod build(MethodBodyInfo body) {
+        SsaBuilder builder = new SsaBuilder(body);
+        if (!body.instructions.isEmpty()) {
+            builder.createBlocks();
+            List<SsaBlock> order = builder.reversePostorder();
+            builder.computeDominators(order);
+            builder.simulate(order);
+            builder.prunePhis();
+        }
+        return builder.method;
+    }
+
+    private void createBlocks() {
+        Map<Label, Integer> labelIndex = LoopAnalyzer.labelIndex(insns);
+        Set<Label> handlers = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (TryCatchInfo block : body.tryCatchBlocks) {
+            handlers.add(block.handler);
+        }
+
+        BitSet leaders = new BitSet();
+        leaders.set(0);
+        for (int i = 0; i < insns.size(); i++) {
+            InstructionInfo insn = insns.get(i);
+            List<Label> targets = LoopAnalyzer.targets(insn);
+            for (Label target : targets) {
+                Integer index = labelIndex.get(target);
+                if (index != null) {
+                    leaders.set(index);
+                }
+            }
+            if (insn.opcode == -1 && handlers.contains(insn.label)) {
+                leaders.set(i);
+            }
+            if (!targets.isEmpty() || LoopAnalyzer.endsBlock(insn.opcode)) {
+                leaders.set(i + 1);
+            }
+        }
+
+        method.blockOf = new SsaBlock[insns.size()];
+        for (int start = 0; start < insns.size(); ) {
+            int end = leaders.nextSetBit(start + 1);
+            if (end < 0 || end > insns.size()) {
+                end = insns.size();
+            }
+            SsaBlock block = new SsaBlock();
+            block.id = method.blocks.size();
+            block.start = start;
+            block.end = end;
+            block.handler = insns.get(start).opcode == -1 && handlers.contains(insns.get(start).label);
+            method.blocks.add(block);
+            Arrays.fill(method.blockOf, start, end, block);
+            start = end;
+        }
+
+        for (SsaBlock block : method.blocks) {
+            InstructionInfo last = insns.get(block.end - 1);
+            if (!LoopAnalyzer.endsBlock(last.opcode) && block.end < insns.size()) {
+                link(block, method.blockOf[block.end]);
+            }
+            for (Label target : LoopAnalyzer.targets(last)) {
+                Integer index = labelIndex.get(target);
+                if (index != null) {
+                    link(block, method.blockOf[index]);
+                }
+            }
+        }
+    }
+
+    private static void link(SsaBlock from, SsaBlock to) {
+        if (!from.successors.contains(to)) {
+            from.successors.add(to);
+            to.predecessors.add(from);
+        }
+    }
+
+    private List<SsaBlock> reversePostorder() {
+        List<SsaBlock> postorder = new ArrayList<>();
+        List<SsaBlock> roots = new ArrayList<>();
+        roots.add(method.blocks.get(0));
+        for (SsaBlock block : method.blocks) {
+            if (block.handler) {
+                roots.add(block);
+            }
+        }
+
+        for (SsaBlock root : roots) {
+            if (root.reachable) {
+                continue;
+            }
+            Deque<Iterator<SsaBlock>> path = new ArrayDeque<>();
+            Deque<SsaBlock> blocks = new ArrayDeque<>();
+            root.reachable = true;
+            path.push(root.successors.iterator());
+            blocks.push(root);
+            while (!path.isEmpty()) {
+                Iterator<SsaBlock> next = path.peek();
+                if (next.hasNext()) {
+                    SsaBlock successor = next.next();
+                    if (!successor.reachable) {
+                        successor.reachable = true;
+                        path.push(successor.successors.iterator());
+                        blocks.push(successor);
+                    }
+                } else {
+                    path.pop();
+                    postorder.add(blocks.pop());
+                }
+            }
+        }
+
+        Collections.reverse(postorder);
+        return postorder;
+    }
+
+    private void computeDominators(List<SsaBlock> order) {
+        int count = method.blocks.size();
+        BitSet[] dominators = new BitSet[count];
+        for (SsaBlock block : order) {
+            dominators[block.id] = new BitSet();
+            if (isRoot(block)) {
+                dominators[block.id].set(block.id);
+            } else {
+                dominators[block.id].set(0, count);
+            }
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (SsaBlock block : order) {
+                if (isRoot(block)) {
+                    continue;
+                }
+                BitSet next = null;
+                for (SsaBlock predecessor : block.predecessors) {
+                    if (dominators[predecessor.id] == null) {
+                        continue;
+                    }
+                    if (next == null) {
+                        next = (BitSet) dominators[predecessor.id].clone();
+                    } else {
+                        next.and(dominators[predecessor.id]);
+                    }
+                }
+                if (next == null) {
+                    next = new BitSet();
+                }
+                next.set(block.id);
+                if (!next.equals(dominators[block.id])) {
+                    dominators[block.id] = next;
+                    changed = true;
+                }
+            }
+        }
+
+        for (SsaBlock block : order) {
+            BitSet strict = (BitSet) dominators[block.id].clone();
+            strict.clear(block.id);
+            for (int id = strict.nextSetBit(0); id >= 0; id = strict.nextSetBit(id + 1)) {
+                if (dominators[id] != null && dominators[id].cardinality() == strict.cardinality()) {
+                    block.idom = method.blocks.get(id);
+                }
+            }
+        }
+    }
+
+    private boolean isRoot(SsaBlock block) {
+        return block.id == 0 || block.handler;
+    }
+
+    private void simulate(List<SsaBlock> order) {
+        maxLocals = parameterSlots();
+        for (InstructionInfo insn : insns) {
+            if ((insn.opcode >= Opcodes.ILOAD && insn.opcode <= Opcodes.ALOAD)
+                    || LoopAnalyzer.isStore(insn.opcode) || insn.opcode == Opcodes.IINC) {
+                maxLocals = Math.max(maxLocals, insn.var + 2);
+            }
+        }
+
+        method.maxLocals = maxLocals;
+        if ((long) insns.size() * maxLocals <= SNAPSHOT_LIMIT) {
+            method.localsAt = new SsaValue[insns.size()][];
+        }
+
+        Map<SsaBlock, SsaValue[]> exitLocals = new HashMap<>();
+        Map<SsaBlock, List<SsaValue>> exitStacks = new HashMap<>();
+        Set<SsaBlock> done = new HashSet<>();
+
+        for (SsaBlock block : order) {
+            SsaValue[] locals = new SsaValue[maxLocals];
+            List<SsaValue> stack = new ArrayList<>();
+            SsaBlock single = block.predecessors.size() == 1 ? block.predecessors.get(0) : null;
+
+            if (block.id == 0 && block.predecessors.isEmpty()) {
+                enterMethod(block, locals);
+            } else if (block.handler) {
+                for (int slot = 0; slot < maxLocals; slot++) {
+                    locals[slot] = value(SsaValue.Kind.UNKNOWN, 'U', -1, block);
+                }
+                SsaValue caught = value(SsaValue.Kind.CAUGHT, 'A', -1, block);
+                caught.nonNull = true;
+                stack.add(caught);
+            } else if (single != null && done.contains(single)) {
+                System.arraycopy(exitLocals.get(single), 0, locals, 0, maxLocals);
+                stack.addAll(exitStacks.get(single));
+            } else {
+                SsaValue[] entry = new SsaValue[maxLocals];
+                if (block.id == 0) {
+                    enterMethod(block, entry);
+                }
+                for (int slot = 0; slot < maxLocals; slot++) {
+                    locals[slot] = phi(block, slot);
+                    if (entry[slot] != null) {
+                        locals[slot].operands.add(entry[slot]);
+                    }
+                }
+                String stackTypes = insns.get(block.start).stackTypes;
+                int depth = stackTypes != null ? stackTypes.length() : 0;
+                for (int slot = 0; slot < depth; slot++) {
+                    stack.add(phi(block, maxLocals + slot));
+                }
+            }
+
+            for (int i = block.start; i < block.end; i++) {
+                if (method.localsAt != null) {
+                    method.localsAt[i] = locals.clone();
+                }
+                simulate(i, insns.get(i), block, locals, stack);
+            }
+            exitLocals.put(block, locals);
+            exitStacks.put(block, stack);
+            done.add(block);
+        }
+
+        for (SsaBlock block : method.blocks) {
+            for (SsaValue phi : block.phis) {
+                for (SsaBlock predecessor : block.predecessors) {
+                    SsaValue operand = null;
+                    if (phi.slot < maxLocals && exitLocals.containsKey(predecessor)) {
+                        operand = exitLocals.get(predecessor)[phi.slot];
+                    } else if (exitStacks.containsKey(predecessor)) {
+                        List<SsaValue> stack = exitStacks.get(predecessor);
+                        int depth = phi.slot - maxLocals;
+                        operand = depth < stack.size() ? stack.get(depth) : null;
+                    }
+                    if (operand != null && exitLocals.containsKey(predecessor)) {
+                        phi.operands.add(operand);
+                    }
+                }
+            }
+        }
+    }
+
+    private void enterMethod(SsaBlock block, SsaValue[] locals) {
+        int slot = 0;
+        if ((body.access & Opcodes.ACC_STATIC) == 0) {
+            SsaValue self = value(SsaValue.Kind.PARAM, 'A', -1, block);
+            self.slot = 0;
+            self.nonNull = true;
+            locals[slot++] = self;
+        }
+        for (Type type : Type.getArgumentTypes(body.descriptor)) {
+            SsaValue param = value(SsaValue.Kind.PARAM, typeOf(type), -1, block);
+            param.slot = slot;
+            locals[slot] = param;
+            slot += type.getSize();
+        }
+    }
+
+    private void simulate(int index, InstructionInfo insn, SsaBlock block, SsaValue[] locals, List<SsaValue> stack) {
+        int op = insn.opcode;
+        if (op == -1 || op == Opcodes.NOP || op == Opcodes.GOTO || op == Opcodes.RETURN || op == Opcodes.RET) {
+            return;
+        }
+
+        if (op == Opcodes.ACONST_NULL) {
+            push(stack, value(SsaValue.Kind.CONST, 'A', index, block));
+        } else if (op >= Opcodes.ICONST_M1 && op <= Opcodes.SIPUSH) {
+            push(stack, value(SsaValue.Kind.CONST, op <= Opcodes.ICONST_5 || op >= Opcodes.BIPUSH ? 'I'
+                    : op <= Opcodes.LCONST_1 ? 'J' : op <= Opcodes.FCONST_2 ? 'F' : 'D', index, block));
+        } else if (op == Opcodes.LDC) {
+            SsaValue constant = value(SsaValue.Kind.CONST, constantType(insn.constant), index, block);
+            constant.nonNull = insn.constant instanceof String || insn.constant instanceof Type;
+            push(stack, constant);
+        } else if (op >= Opcodes.ILOAD && op <= Opcodes.ALOAD) {
+            SsaValue local = insn.var < maxLocals ? locals[insn.var] : null;
+            if (local == null) {
+                local = value(SsaValue.Kind.UNKNOWN, "IJFDA".charAt(op - Opcodes.ILOAD), index, block);
+                locals[insn.var] = local;
+            }
+            method.operands.put(index, List.of(local));
+            stack.add(local);
+        } else if (LoopAnalyzer.isStore(op)) {
+            SsaValue stored = pop(stack, block);
+            if (insn.var > 0 && isWide(locals[insn.var - 1])) {
+                locals[insn.var - 1] = null;
+            }
+            locals[insn.var] = stored;
+            if (op == Opcodes.LSTORE || op == Opcodes.DSTORE) {
+                locals[insn.var + 1] = null;
+            }
+            method.operands.put(index, List.of(stored));
+        } else if (op == Opcodes.IINC) {
+            SsaValue current = locals[insn.var] != null ? locals[insn.var]
+                    : value(SsaValue.Kind.UNKNOWN, 'I', index, block);
+            method.operands.put(index, List.of(current));
+            SsaValue incremented = define(index, 'I', block, List.of(current));
+            locals[insn.var] = incremented;
+        } else if (op >= Opcodes.POP && op <= Opcodes.SWAP) {
+            shuffle(op, stack, block);
+        } else if (op == Opcodes.CHECKCAST) {
+            SsaValue checked = pop(stack, block);
+            method.operands.put(index, List.of(checked));
+            stack.add(checked);
+        } else {
+            Effect effect = effect(insn);
+            List<SsaValue> operands = new ArrayList<>();
+            for (int i = 0; i < effect.pops; i++) {
+                operands.add(0, pop(stack, block));
+            }
+            if (!operands.isEmpty()) {
+                method.operands.put(index, operands);
+            }
+            if (effect.push != 0) {
+                SsaValue result = define(index, effect.push, block, operands);
+                result.nonNull = op == Opcodes.NEW || op == Opcodes.NEWARRAY
+                        || op == Opcodes.ANEWARRAY || op == Opcodes.MULTIANEWARRAY;
+                stack.add(result);
+            }
+        }
+    }
+
+    private void shuffle(int op, List<SsaValue> stack, SsaBlock block) {
+        SsaValue v1 = pop(stack, block);
+        switch (op) {
+            case Opcodes.POP -> { }
+            case Opcodes.POP2 -> {
+                if (!isWide(v1)) {
+                    pop(stack, block);
+                }
+            }
+            case Opcodes.DUP -> pushAll(stack, v1, v1);
+            case Opcodes.DUP_X1 -> {
+                SsaValue v2 = pop(stack, block);
+                pushAll(stack, v1, v2, v1);
+            }
+            case Opcodes.DUP_X2 -> {
+                SsaValue v2 = pop(stack, block);
+                if (isWide(v2)) {
+                    pushAll(stack, v1, v2, v1);
+                } else {
+                    SsaValue v3 = pop(stack, block);
+                    pushAll(stack, v1, v3, v2, v1);
+                }
+            }
+            case Opcodes.DUP2 -> {
+                if (isWide(v1)) {
+                    pushAll(stack, v1, v1);
+                } else {
+                    SsaValue v2 = pop(stack, block);
+                    pushAll(stack, v2, v1, v2, v1);
+                }
+            }
+            case Opcodes.DUP2_X1 -> {
+                SsaValue v2 = pop(stack, block);
+                if (isWide(v1)) {
+                    pushAll(stack, v1, v2, v1);
+                } else {
+                    SsaValue v3 = pop(stack, block);
+                    pushAll(stack, v2, v1, v3, v2, v1);
+                }
+            }
+            case Opcodes.DUP2_X2 -> {
+                SsaValue v2 = pop(stack, block);
+                if (isWide(v1)) {
+                    if (isWide(v2)) {
+                        pushAll(stack, v1, v2, v1);
+                    } else {
+                        SsaValue v3 = pop(stack, block);
+                        pushAll(stack, v1, v3, v2, v1);
+                    }
+                } else {
+                    SsaValue v3 = pop(stack, block);
+                    if (isWide(v3)) {
+                        pushAll(stack, v2, v1, v3, v2, v1);
+                    } else {
+                        SsaValue v4 = pop(stack, block);
+                        pushAll(stack, v2, v1, v4, v3, v2, v1);
+                    }
+                }
+            }
+            default -> {
+                SsaValue v2 = pop(stack, block);
+                pushAll(stack, v1, v2);
+            }
+        }
+    }
+
+    private Effect effect(InstructionInfo insn) {
+        int op = insn.opcode;
+        if (op >= Opcodes.IALOAD && op <= Opcodes.SALOAD) {
+            return new Effect(2, "IJFDAIII".charAt(op - Opcodes.IALOAD));
+        }
+        if (op >= Opcodes.IASTORE && op <= Opcodes.SASTORE) {
+            return new Effect(3, (char) 0);
+        }
+        if (op >= Opcodes.IADD && op <= Opcodes.DREM) {
+            return new Effect(2, "IJFD".charAt((op - Opcodes.IADD) % 4));
+        }
+        if (op >= Opcodes.INEG && op <= Opcodes.DNEG) {
+            return new Effect(1, "IJFD".charAt(op - Opcodes.INEG));
+        }
+        if (op >= Opcodes.ISHL && op <= Opcodes.LXOR) {
+            return new Effect(2, (op - Opcodes.ISHL) % 2 == 0 ? 'I' : 'J');
+        }
+        if (op >= Opcodes.I2L && op <= Opcodes.I2S) {
+            return new Effect(1, "JFDIFDIJDIJFIII".charAt(op - Opcodes.I2L));
+        }
+        if (op >= Opcodes.LCMP && op <= Opcodes.DCMPG) {
+            return new Effect(2, 'I');
+        }
+        if (op >= Opcodes.IFEQ && op <= Opcodes.IFLE) {
+            return new Effect(1, (char) 0);
+        }
+        if (op >= Opcodes.IF_ICMPEQ && op <= Opcodes.IF_ACMPNE) {
+            return new Effect(2, (char) 0);
+        }
+        if (op >= Opcodes.IRETURN && op <= Opcodes.ARETURN) {
+            return new Effect(1, (char) 0);
+        }
+        if (op >= Opcodes.INVOKEVIRTUAL && op <= Opcodes.INVOKEDYNAMIC) {
+            Type returnType = Type.getReturnType(insn.descriptor);
+            int pops = Type.getArgumentTypes(insn.descriptor).length
+                    + (op == Opcodes.INVOKESTATIC || op == Opcodes.INVOKEDYNAMIC ? 0 : 1);
+            return new Effect(pops, returnType.getSort() == Type.VOID ? (char) 0 : typeOf(returnType));
+        }
+        return switch (op) {
+            case Opcodes.GETSTATIC -> new Effect(0, typeOf(Type.getType(insn.descriptor)));
+            case Opcodes.PUTSTATIC -> new Effect(1, (char) 0);
+            case Opcodes.GETFIELD -> new Effect(1, typeOf(Type.getType(insn.descriptor)));
+            case Opcodes.PUTFIELD -> new Effect(2, (char) 0);
+            case Opcodes.NEW, Opcodes.JSR -> new Effect(0, 'A');
+            case Opcodes.NEWARRAY, Opcodes.ANEWARRAY -> new Effect(1, 'A');
+            case Opcodes.ARRAYLENGTH, Opcodes.INSTANCEOF -> new Effect(1, 'I');
+            case Opcodes.TABLESWITCH, Opcodes.LOOKUPSWITCH, Opcodes.ATHROW, Opcodes.MONITORENTER,
+                 Opcodes.MONITOREXIT, Opcodes.IFNULL, Opcodes.IFNONNULL -> new Effect(1, (char) 0);
+            default -> new Effect(0, (char) 0);
+        };
+    }
+
+    private void prunePhis() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (SsaBlock block : method.blocks) {
+                Iterator<SsaValue> phis = block.phis.iterator();
+                while (phis.hasNext()) {
+                    SsaValue phi = phis.next();
+                    SsaValue same = null;
+                    boolean trivial = true;
+                    for (SsaValue operand : phi.operands) {
+                        SsaValue resolved = resolve(operand);
+                        if (resolved == phi || resolved == same) {
+                            continue;
+                        }
+                        if (same != null) {
+                            trivial = false;
+                            break;
+                        }
+                        same = resolved;
+                    }
+                    if (trivial) {
+                        forwarded.put(phi, same != null ? same : value(SsaValue.Kind.UNKNOWN, 'U', -1, block));
+                        phis.remove();
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        List<SsaValue> phis = new ArrayList<>();
+        for (SsaBlock block : method.blocks) {
+            for (SsaValue phi : block.phis) {
+                phi.operands.replaceAll(this::resolve);
+                phis.add(phi);
+            }
+        }
+        inferPhiTypes(phis);
+        for (Map.Entry<Integer, List<SsaValue>> entry : method.operands.entrySet()) {
+            List<SsaValue> resolved = new ArrayList<>();
+            for (SsaValue operand : entry.getValue()) {
+                resolved.add(resolve(operand));
+            }
+            entry.setValue(resolved);
+        }
+        for (SsaValue value : method.results.values()) {
+            value.operands.replaceAll(this::resolve);
+        }
+        if (method.localsAt != null) {
+            for (SsaValue[] locals : method.localsAt) {
+                if (locals != null) {
+                    for (int slot = 0; slot < locals.length; slot++) {
+                        locals[slot] = locals[slot] != null ? resolve(locals[slot]) : null;
+                    }
+                }
+            }
+        }
+        method.values.removeIf(forwarded::containsKey);
+    }
+
+    private static void inferPhiTypes(List<SsaValue> phis) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (SsaValue phi : phis) {
+                if (phi.type != 'U') {
+                    continue;
+                }
+                Set<Character> types = new HashSet<>();
+                for (SsaValue operand : phi.operands) {
+                    if (operand.kind != SsaValue.Kind.PHI || operand.type != 'U') {
+                        types.add(operand.type);
+                    }
+                }
+                if (types.size() == 1 && types.iterator().next() != 'U') {
+                    phi.type = types.iterator().next();
+                    changed = true;
+                }
+            }
+        }
+
+        changed = true;
+        while (changed) {
+            changed = false;
+            for (SsaValue phi : phis) {
+                if (phi.type != 'U' && phi.operands.stream().anyMatch(operand -> operand.type != phi.type)) {
+                    phi.type = 'U';
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private SsaValue resolve(SsaValue value) {
+        SsaValue current = value;
+        while (forwarded.containsKey(current)) {
+            current = forwarded.get(current);
+        }
+        return current;
+    }
+
+    private SsaValue phi(SsaBlock block, int slot) {
+        SsaValue phi = value(SsaValue.Kind.PHI, 'U', -1, block);
+        phi.slot = slot;
+        block.phis.add(phi);
+        return phi;
+    }
+
+    private SsaValue define(int index, char type, SsaBlock block, List<SsaValue> operands) {
+        SsaValue result = value(SsaValue.Kind.INSN, type, index, block);
+        result.operands.addAll(operands);
+        method.results.put(index, result);
+        return result;
+    }
+
+    private SsaValue value(SsaValue.Kind kind, char type, int index, SsaBlock block) {
+        SsaValue value = new SsaValue();
+        value.id = method.values.size();
+        value.kind = kind;
+        value.type = type;
+        value.insn = index;
+        value.block = block;
+        method.values.add(value);
+        return value;
+    }
+
+    private SsaValue pop(List<SsaValue> stack, SsaBlock block) {
+        return stack.isEmpty() ? value(SsaValue.Kind.UNKNOWN, 'U', -1, block) : stack.remove(stack.size() - 1);
+    }
+
+    private static void push(List<SsaValue> stack, SsaValue value) {
+        stack.add(value);
+    }
+
+    private static void pushAll(List<SsaValue> stack, SsaValue... values) {
+        stack.addAll(Arrays.asList(values));
+    }
+
+    private static boolean isWide(SsaValue value) {
+        return value != null && (value.type == 'J' || value.type == 'D');
+    }
+
+    private int parameterSlots() {
+        int slots = (body.access & Opcodes.ACC_STATIC) != 0 ? 0 : 1;
+        for (Type type : Type.getArgumentTypes(body.descriptor)) {
+            slots += type.getSize();
+        }
+        return slots;
+    }
+
+    private static char constantType(Object constant) {
+        if (constant instanceof Integer) {
+            return 'I';
+        }
+        if (constant instanceof Long) {
+            return 'J';
+        }
+        if (constant instanceof Float) {
+            return 'F';
+        }
+        return constant instanceof Double ? 'D' : 'A';
+    }
+
+    private static char typeOf(Type type) {
+        return switch (type.getSort()) {
+            case Type.LONG -> 'J';
+            case Type.FLOAT -> 'F';
+            case Type.DOUBLE -> 'D';
+            case Type.OBJECT, Type.ARRAY -> 'A';
+            default -> 'I';
+        };
+    }
+
+    private static class Effect {
+        final int pops;
+        final char push;
+
+        Effect(int pops, char push) {
+            this.pops = pops;
+            this.push = push;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ru.sarkolsss.ir;
+
+import java.util.*;
+
+public class SsaMethod {
+    public List<SsaBlock> blocks = new ArrayList<>();
+    public List<SsaValue> values = new ArrayList<>();
+    public Map<Integer, List<SsaValue>> operands = new HashMap<>();
+    public Map<Integer, SsaValue> results = new HashMap<>();
+    public SsaBlock[] blockOf = new SsaBlock[0];
+    public SsaValue[][] localsAt;
+    public int maxLocals;
+
+    public List<SsaValue> operands(int insn) {
+        return operands.getOrDefault(insn, List.of());
+    }
+
+    public SsaValue localAt(int insn, int slot) {
+        return localsAt != null && insn >= 0 && insn < localsAt.length && localsAt[insn] != null
+                && slot < localsAt[insn].length ? localsAt[insn][slot] : null;
+    }
+
+    public SsaValue result(int insn) {
+        return results.get(insn);
+    }
+
+    public SsaBlock blockOf(int insn) {
+        return insn >= 0 && insn < blockOf.length ? blockOf[insn] : null;
+    }
+
+    public boolean dominates(SsaBlock dominator, SsaBlock block) {
+        for (SsaBlock current = block; current != null; current = current.idom) {
+            if (current == dominator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean dominates(int dominator, int insn) {
+        SsaBlock from = blockOf(dominator);
+        SsaBlock to = blockOf(insn);
+        if (from == null || to == null) {
+            return false;
+        }
+        return from == to ? dominator < insn : dominates(from, to);
+    }
+
+    public int phiCount() {
+        int count = 0;
+        for (SsaBlock block : blocks) {
+            count += block.phis.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,22 @@
+package ru.sarkolsss.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SsaValue {
+    public enum Kind { PARAM, CONST, INSN, PHI, CAUGHT, UNKNOWN }
+
+    public int id;
+    public Kind kind;
+    public char type;
+    public int insn = -1;
+    public int slot = -1;
+    public SsaBlock block;
+    public List<SsaValue> operands = new ArrayList<>();
+    public boolean nonNull;
+
+    @Override
+    public String toString() {
+        return "v" + id;
+    }
+}
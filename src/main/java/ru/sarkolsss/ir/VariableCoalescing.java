@@ -0,0 +1,279 @@
+package ru.sarkolsss.ir;
+
+import org.objectweb.asm.Opcodes;
+import ru.sarkolsss.bytecode.InstructionInfo;
+import ru.sarkolsss.bytecode.LivenessAnalyzer;
+import ru.sarkolsss.bytecode.MethodBodyInfo;
+import java.util.*;
+
+public class VariableCoalescing {
+    private final Map<InstructionInfo, Variable> variables = new IdentityHashMap<>();
+    private final Map<String, Integer> nodeIds = new HashMap<>();
+    private final List<Node> nodes = new ArrayList<>();
+    private final List<Integer> parent = new ArrayList<>();
+    private int coalescedWebs;
+
+    public void clear() {
+        variables.clear();
+        nodeIds.clear();
+        nodes.clear();
+        parent.clear();
+        coalescedWebs = 0;
+    }
+
+    public Variable variable(InstructionInfo insn) {
+        return variables.get(insn);
+    }
+
+    public int coalescedWebs() {
+        return coalescedWebs;
+    }
+
+    public void analyze(SsaMethod ssa, MethodBodyInfo body) {
+        clear();
+        List<InstructionInfo> insns = body.instructions;
+        for (InstructionInfo insn : insns) {
+            if (insn.opcode == Opcodes.JSR || insn.opcode == Opcodes.RET) {
+                return;
+            }
+        }
+
+        int[] access = new int[insns.size()];
+        Arrays.fill(access, -1);
+        BitSet mixed = new BitSet();
+        for (int i = 0; i < insns.size(); i++) {
+            InstructionInfo insn = insns.get(i);
+            int op = insn.opcode;
+            SsaValue value = ssa.operands(i).isEmpty() ? null : ssa.operands(i).get(0);
+            if ((op >= Opcodes.ILOAD && op <= Opcodes.DLOAD) || (op >= Opcodes.ISTORE && op <= Opcodes.DSTORE)) {
+                char type = "IJFD".charAt(op >= Opcodes.ISTORE ? op - Opcodes.ISTORE : op - Opcodes.ILOAD);
+                if (value == null || value.kind == SsaValue.Kind.UNKNOWN) {
+                    mixed.set(insn.var);
+                }
+                access[i] = value != null ? node(insn.var, type, value) : -1;
+            } else if (op == Opcodes.IINC) {
+                SsaValue result = ssa.result(i);
+                if (value == null || result == null || value.kind == SsaValue.Kind.UNKNOWN) {
+                    mixed.set(insn.var);
+                    continue;
+                }
+                access[i] = node(insn.var, 'I', result);
+                union(node(insn.var, 'I', value), access[i]);
+            }
+        }
+
+        for (SsaBlock block : ssa.blocks) {
+            for (SsaValue phi : block.phis) {
+                if (phi.slot >= ssa.maxLocals || phi.type == 'A') {
+                    continue;
+                }
+                if (phi.type == 'U') {
+                    mixed.set(phi.slot);
+                    continue;
+                }
+                for (SsaValue operand : phi.operands) {
+                    if (operand.kind == SsaValue.Kind.UNKNOWN) {
+                        mixed.set(phi.slot);
+                    }
+                    union(node(phi.slot, phi.type, phi), node(phi.slot, phi.type, operand));
+                }
+            }
+        }
+
+        for (SsaValue value : ssa.values) {
+            if (value.kind == SsaValue.Kind.PARAM && value.type != 'A' && mixed.get(value.slot)) {
+                node(value.slot, value.type, value);
+            }
+        }
+
+        Map<String, Integer> merged = new HashMap<>();
+        for (int id = 0; id < nodes.size(); id++) {
+            Node node = nodes.get(id);
+            if (mixed.get(node.slot)) {
+                Integer first = merged.putIfAbsent(node.slot + "" + node.type, id);
+                if (first != null) {
+                    union(first, id);
+                }
+            }
+        }
+
+        if (ssa.localsAt != null) {
+            coalesceCopies(ssa, body, access, mixed);
+        }
+
+        Map<Integer, Variable> byRoot = new HashMap<>();
+        Map<String, Integer> indices = new HashMap<>();
+        Set<Integer> parameters = parameterRoots();
+        for (int i = 0; i < insns.size(); i++) {
+            if (access[i] < 0) {
+                continue;
+            }
+            int root = find(access[i]);
+            if (parameters.contains(root)) {
+                continue;
+            }
+            Variable variable = byRoot.computeIfAbsent(root, r -> {
+                Variable created = new Variable();
+                created.slot = Integer.MAX_VALUE;
+                for (int id = 0; id < nodes.size(); id++) {
+                    if (find(id) == r) {
+                        created.slot = Math.min(created.slot, nodes.get(id).slot);
+                        created.type = nodes.get(id).type;
+                    }
+                }
+                created.index = indices.merge(created.slot + "" + created.type, 1, Integer::sum) - 1;
+                return created;
+            });
+            variables.put(insns.get(i), variable);
+        }
+    }
+
+    private void coalesceCopies(SsaMethod ssa, MethodBodyInfo body, int[] access, BitSet mixed) {
+        List<InstructionInfo> insns = body.instructions;
+        List<BitSet> liveIn = LivenessAnalyzer.primitiveLiveIn(body);
+        Set<Integer> parameters = parameterRoots();
+
+        for (int i = 0; i < insns.size(); i++) {
+            InstructionInfo insn = insns.get(i);
+            if (insn.opcode < Opcodes.ISTORE || insn.opcode > Opcodes.DSTORE || access[i] < 0
+                    || mixed.get(insn.var)) {
+                continue;
+            }
+            Node stored = nodes.get(access[i]);
+            for (int slot = 0; slot < ssa.maxLocals; slot++) {
+                if (slot == insn.var || mixed.get(slot) || ssa.localAt(i, slot) != stored.value) {
+                    continue;
+                }
+                Integer source = nodeIds.get(key(slot, stored.type, stored.value));
+                if (source == null) {
+                    continue;
+                }
+                int from = find(source);
+                int to = find(access[i]);
+                if (from != to && !parameters.contains(from) && !parameters.contains(to)
+                        && !interfere(ssa, insns, liveIn, access, from, to)) {
+                    union(from, to);
+                    coalescedWebs++;
+                }
+            }
+        }
+    }
+
+    private boolean interfere(SsaMethod ssa, List<InstructionInfo> insns, List<BitSet> liveIn,
+                              int[] access, int first, int second) {
+        BitSet firstSlots = slots(first);
+        BitSet secondSlots = slots(second);
+        char type = nodes.get(first).type;
+
+        for (int p = 0; p < insns.size(); p++) {
+            BitSet live = liveIn.get(p);
+            for (int x = firstSlots.nextSetBit(0); x >= 0; x = firstSlots.nextSetBit(x + 1)) {
+                SsaValue held = live.get(x) ? holding(ssa, p, x, type, first) : null;
+                if (held == null) {
+                    continue;
+                }
+                for (int y = secondSlots.nextSetBit(0); y >= 0; y = secondSlots.nextSetBit(y + 1)) {
+                    SsaValue other = y != x && live.get(y) ? holding(ssa, p, y, type, second) : null;
+                    if (other != null && other != held) {
+                        return true;
+                    }
+                }
+            }
+
+            if (access[p] < 0 || p + 1 >= insns.size() || insns.get(p).opcode >= Opcodes.ILOAD
+                    && insns.get(p).opcode <= Opcodes.DLOAD) {
+                continue;
+            }
+            int defined = find(access[p]);
+            if (defined != first && defined != second) {
+                continue;
+            }
+            SsaValue written = nodes.get(access[p]).value;
+            int other = defined == first ? second : first;
+            BitSet otherSlots = defined == first ? secondSlots : firstSlots;
+            BitSet liveOut = liveIn.get(p + 1);
+            for (int x = otherSlots.nextSetBit(0); x >= 0; x = otherSlots.nextSetBit(x + 1)) {
+                SsaValue held = x != insns.get(p).var && liveOut.get(x) ? holding(ssa, p, x, type, other) : null;
+                if (held != null && held != written) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private SsaValue holding(SsaMethod ssa, int insn, int slot, char type, int root) {
+        SsaValue value = ssa.localAt(insn, slot);
+        if (value == null) {
+            return null;
+        }
+        Integer id = nodeIds.get(key(slot, type, value));
+        return id != null && find(id) == root ? value : null;
+    }
+
+    private BitSet slots(int root) {
+        BitSet slots = new BitSet();
+        for (int id = 0; id < nodes.size(); id++) {
+            if (find(id) == root) {
+                slots.set(nodes.get(id).slot);
+            }
+        }
+        return slots;
+    }
+
+    private Set<Integer> parameterRoots() {
+        Set<Integer> roots = new HashSet<>();
+        for (int id = 0; id < nodes.size(); id++) {
+            if (nodes.get(id).value.kind == SsaValue.Kind.PARAM) {
+                roots.add(find(id));
+            }
+        }
+        return roots;
+    }
+
+    private int node(int slot, char type, SsaValue value) {
+        return nodeIds.computeIfAbsent(key(slot, type, value), k -> {
+            nodes.add(new Node(slot, type, value));
+            parent.add(nodes.size() - 1);
+            return nodes.size() - 1;
+        });
+    }
+
+    private static String key(int slot, char type, SsaValue value) {
+        return slot + ":" + type + ":" + value.id;
+    }
+
+    private int find(int id) {
+        while (parent.get(id) != id) {
+            parent.set(id, parent.get(parent.get(id)));
+            id = parent.get(id);
+        }
+        return id;
+    }
+
+    private void union(int first, int second) {
+        int a = find(first);
+        int b = find(second);
+        if (a != b) {
+            parent.set(Math.max(a, b), Math.min(a, b));
+        }
+    }
+
+    public static class Variable {
+        public int slot;
+        public char type;
+        public int index;
+    }
+
+    private static class Node {
+        final int slot;
+        final char type;
+        final SsaValue value;
+
+        Node(int slot, char type, SsaValue value) {
+            this.slot = slot;
+            this.type = type;
+            this.value = value;
+        }
+    }
+}
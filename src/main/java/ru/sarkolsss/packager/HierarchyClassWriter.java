@@ -0,0 +1,18 @@
+package ru.sarkolsss.packager;
+
+import org.objectweb.asm.ClassWriter;
+import ru.sarkolsss.bytecode.ClassHierarchy;
+
+public class HierarchyClassWriter extends ClassWriter {
+    private final ClassHierarchy hierarchy;
+
+    public HierarchyClassWriter(int flags, ClassHierarchy hierarchy) {
+        super(flags);
+        this.hierarchy = hierarchy;
+    }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        return hierarchy.getCommonSuperClass(type1, type2);
+    }
+}
@@ -1,10 +1,15 @@
 package ru.sarkolsss.packager;
 
+import ru.sarkolsss.bytecode.ClassHierarchy;
 import ru.sarkolsss.bytecode.NativeMethodInfo;
+import ru.sarkolsss.utils.FileUtils;
 import ru.sarkolsss.utils.Logger;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.HashSet;
 import java.util.Set;
@@ -13,77 +18,66 @@ import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
 
 public class JarRepackager {
+    private static final long ENTRY_TIME =
+            new GregorianCalendar(1980, 1, 1, 0, 0, 0).getTimeInMillis();
+
     private final Path inputJar;
     private final Path outputJar;
     private final Path workDir;
+    private final ClassHierarchy hierarchy;
 
-    public JarRepackager(Path inputJar, Path outputJar, Path workDir) {
+    public JarRepackager(Path inputJar, Path outputJar, Path workDir, ClassHierarchy hierarchy) {
         this.inputJar = inputJar;
         this.outputJar = outputJar;
         this.workDir = workDir;
+        this.hierarchy = hierarchy;
     }
 
     public void repackage(Path dllPath, List<NativeMethodInfo> nativeMethods) {
         try {
-            NativeMethodModifier modifier = new NativeMethodModifier(workDir, nativeMethods);
-            modifier.modifyClasses();
-
             Set<String> classesWithNativeMethods = new HashSet<>();
             for (NativeMethodInfo method : nativeMethods) {
                 classesWithNativeMethods.add(method.getClassName() + ".class");
             }
 
-            byte[] loaderClass = NativeLoaderGenerator.generateLoaderClass();
+            byte[] dllBytes = Files.readAllBytes(dllPath);
+            String libraryName = "java2cpp_native_" + FileUtils.sha256(dllBytes).substring(0, 16) + ".dll";
+            byte[] loaderClass = NativeLoaderGenerator.generateLoaderClass(libraryName);
 
             try (JarFile jar = new JarFile(inputJar.toFile());
                  JarOutputStream jos = new JarOutputStream(Files.newOutputStream(outputJar))) {
 
-                var entries = jar.entries();
-                while (entries.hasMoreElements()) {
-                    JarEntry entry = entries.nextElement();
-
-                    if (entry.getName().endsWith(".class")) {
-                        Path modifiedClass = workDir.resolve(entry.getName());
-
-                        if (Files.exists(modifiedClass)) {
-                            byte[] classBytes = Files.readAllBytes(modifiedClass);
-
-                            if (classesWithNativeMethods.contains(entry.getName())) {
-                                String className = entry.getName()
-                                        .replace(".class", "")
-                                        .replace('/', '.');
-                                classBytes = StaticInitializerInjector.injectStaticInitializer(
-                                        classBytes, className
-                                );
-                                Logger.detail("Injected static initializer: " + entry.getName());
-                            }
-
-                            jos.putNextEntry(new JarEntry(entry.getName()));
-                            jos.write(classBytes);
-                        } else {
-                            jos.putNextEntry(entry);
-                            jar.getInputStream(entry).transferTo(jos);
-                        }
-                    } else {
-                        jos.putNextEntry(entry);
+                for (JarEntry entry : sortedEntries(jar)) {
+                    jos.putNextEntry(newEntry(entry.getName()));
+
+                    if (classesWithNativeMethods.contains(entry.getName())) {
+                        byte[] classBytes = Files.readAllBytes(workDir.resolve(entry.getName()));
+                        String className = entry.getName()
+                                .replace(".class", "")
+                                .replace('/', '.');
+                        classBytes = StaticInitializerInjector.injectStaticInitializer(
+                                classBytes, className, hierarchy
+                        );
+                        Logger.detail("Injected static initializer: " + entry.getName());
+
+                        jos.write(classBytes);
+                    } else if (!entry.isDirectory()) {
                         jar.getInputStream(entry).transferTo(jos);
                     }
 
                     jos.closeEntry();
                 }
 
-                JarEntry loaderEntry = new JarEntry("ru/sarkolsss/NativeLoader.class");
-                jos.putNextEntry(loaderEntry);
+                jos.putNextEntry(newEntry("ru/sarkolsss/NativeLoader.class"));
                 jos.write(loaderClass);
                 jos.closeEntry();
                 Logger.detail("Added NativeLoader class");
 
-                JarEntry dllEntry = new JarEntry("native/java2cpp_native.dll");
-                jos.putNextEntry(dllEntry);
-                Files.copy(dllPath, jos);
+                jos.putNextEntry(newEntry("native/java2cpp_native.dll"));
+                jos.write(dllBytes);
                 jos.closeEntry();
 
-                Logger.detail("Native library embedded into JAR");
+                Logger.detail("Native library embedded into JAR as " + libraryName);
             }
 
         } catch (IOException e) {
@@ -91,4 +85,26 @@ public class JarRepackager {
             throw new RuntimeException(e);
         }
     }
-}
\ No newline at end of file
+
+    private List<JarEntry> sortedEntries(JarFile jar) {
+        List<JarEntry> entries = new ArrayList<>(Collections.list(jar.entries()));
+        entries.sort((a, b) -> {
+            int rankA = entryRank(a.getName());
+            int rankB = entryRank(b.getName());
+            return rankA != rankB ? Integer.compare(rankA, rankB) : a.getName().compareTo(b.getName());
+        });
+        return entries;
+    }
+
+    private int entryRank(String name) {
+        if (name.equals("META-INF/")) return 0;
+        if (name.equals(JarFile.MANIFEST_NAME)) return 1;
+        return 2;
+    }
+
+    private JarEntry newEntry(String name) {
+        JarEntry entry = new JarEntry(name);
+        entry.setTime(ENTRY_TIME);
+        return entry;
+    }
+}
@@ -7,15 +7,17 @@ import java.io.InputStream;
 
 public class NativeLoaderGenerator {
 
-    public static byte[] generateLoaderClass() {
+    public static byte[] generateLoaderClass(String libraryName) {
         ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
 
         cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC,
                 "ru/sarkolsss/NativeLoader", null,
                 "java/lang/Object", null);
 
-        generateExtractLibraryMethod(cw);
+        generateExtractLibraryMethod(cw, libraryName);
         generateLoadNativeLibraryMethod(cw);
+        cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_NATIVE,
+                "registerNatives", "(Ljava/lang/Class;Ljava/lang/String;)V", null, null).visitEnd();
 
         cw.visitEnd();
 
@@ -23,7 +25,7 @@ public class NativeLoaderGenerator {
         return cw.toByteArray();
     }
 
-    private static void generateExtractLibraryMethod(ClassWriter cw) {
+    private static void generateExtractLibraryMethod(ClassWriter cw, String libraryName) {
         MethodVisitor mv = cw.visitMethod(
                 Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC,
                 "extractLibrary",
@@ -41,7 +43,7 @@ public class NativeLoaderGenerator {
         mv.visitTypeInsn(Opcodes.NEW, "java/io/File");
         mv.visitInsn(Opcodes.DUP);
         mv.visitVarInsn(Opcodes.ALOAD, 0);
-        mv.visitLdcInsn("java2cpp_native_" + System.currentTimeMillis() + ".dll");
+        mv.visitLdcInsn(libraryName);
         mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/io/File",
                 "<init>", "(Ljava/lang/String;Ljava/lang/String;)V", false);
         mv.visitVarInsn(Opcodes.ASTORE, 1);
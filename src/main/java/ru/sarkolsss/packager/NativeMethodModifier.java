@@ -5,6 +5,7 @@ import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
+import ru.sarkolsss.bytecode.ClassHierarchy;
 import ru.sarkolsss.bytecode.NativeMethodInfo;
 import ru.sarkolsss.utils.Logger;
 import java.io.IOException;
@@ -15,10 +16,13 @@ import java.util.List;
 public class NativeMethodModifier {
     private final Path workDir;
     private final List<NativeMethodInfo> nativeMethods;
+    private final ClassHierarchy hierarchy;
 
-    public NativeMethodModifier(Path workDir, List<NativeMethodInfo> nativeMethods) {
+    public NativeMethodModifier(Path workDir, List<NativeMethodInfo> nativeMethods,
+                                ClassHierarchy hierarchy) {
         this.workDir = workDir;
         this.nativeMethods = nativeMethods;
+        this.hierarchy = hierarchy;
     }
 
     public void modifyClasses() {
@@ -66,7 +70,8 @@ public class NativeMethodModifier {
             }
         }
 
-        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        ClassWriter writer = new HierarchyClassWriter(
+                ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES, hierarchy);
         classNode.accept(writer);
         return writer.toByteArray();
     }
@@ -2,11 +2,13 @@ package ru.sarkolsss.packager;
 
 import org.objectweb.asm.*;
 import org.objectweb.asm.tree.*;
+import ru.sarkolsss.bytecode.ClassHierarchy;
 import java.util.List;
 
 public class StaticInitializerInjector {
     
-    public static byte[] injectStaticInitializer(byte[] classBytes, String className) {
+    public static byte[] injectStaticInitializer(byte[] classBytes, String className,
+                                                 ClassHierarchy hierarchy) {
         ClassReader reader = new ClassReader(classBytes);
         ClassNode classNode = new ClassNode();
         reader.accept(classNode, 0);
@@ -19,9 +21,17 @@ public class StaticInitializerInjector {
             classNode.methods.add(clinit);
         }
         
+        if ((classNode.version & 0xFFFF) < Opcodes.V1_5) {
+            classNode.version = Opcodes.V1_5;
+        }
+
         InsnList loaderCall = new InsnList();
         loaderCall.add(new MethodInsnNode(Opcodes.INVOKESTATIC, 
                 "ru/sarkolsss/NativeLoader", "loadNativeLibrary", "()V", false));
+        loaderCall.add(new LdcInsnNode(Type.getObjectType(classNode.name)));
+        loaderCall.add(new LdcInsnNode(classNode.name));
+        loaderCall.add(new MethodInsnNode(Opcodes.INVOKESTATIC,
+                "ru/sarkolsss/NativeLoader", "registerNatives", "(Ljava/lang/Class;Ljava/lang/String;)V", false));
         
         if (clinit.instructions.size() == 0) {
             clinit.instructions.add(loaderCall);
@@ -30,7 +40,8 @@ public class StaticInitializerInjector {
             clinit.instructions.insert(loaderCall);
         }
         
-        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        ClassWriter writer = new HierarchyClassWriter(
+                ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES, hierarchy);
         classNode.accept(writer);
         
         return writer.toByteArray();
@@ -0,0 +1,141 @@
+package ru.sarkolsss.ir;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+import ru.sarkolsss.bytecode.MethodBodyAnalyzer;
+import ru.sarkolsss.bytecode.MethodBodyInfo;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NullCheckEliminationTest {
+
+    @Test
+    void repeatedDereferenceIsRedundant() {
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "(LT;)I", null, null);
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitFieldInsn(Opcodes.GETFIELD, "T", "a", "I");
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitFieldInsn(Opcodes.GETFIELD, "T", "b", "I");
+        method.visitInsn(Opcodes.IADD);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(2, 1);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        NullCheckElimination checks = analyze(body);
+
+        int first = SsaBuilderTest.find(body, Opcodes.GETFIELD);
+        assertFalse(checks.isRedundant(first));
+        assertTrue(checks.isRedundant(nextGetField(body, first)));
+    }
+
+    @Test
+    void checkOnOneBranchDoesNotCoverJoin() {
+        Label otherwise = new Label();
+        Label join = new Label();
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "(LT;I)I", null, null);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitJumpInsn(Opcodes.IFEQ, otherwise);
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitFieldInsn(Opcodes.GETFIELD, "T", "a", "I");
+        method.visitInsn(Opcodes.POP);
+        method.visitLabel(otherwise);
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitFieldInsn(Opcodes.GETFIELD, "T", "b", "I");
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(2, 2);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        NullCheckElimination checks = analyze(body);
+
+        int first = SsaBuilderTest.find(body, Opcodes.GETFIELD);
+        assertFalse(checks.isRedundant(first));
+        assertFalse(checks.isRedundant(nextGetField(body, first)));
+    }
+
+    @Test
+    void nonNullBranchProvesDereference() {
+        Label isNull = new Label();
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "(LT;)I", null, null);
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitJumpInsn(Opcodes.IFNULL, isNull);
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitFieldInsn(Opcodes.GETFIELD, "T", "a", "I");
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitLabel(isNull);
+        method.visitInsn(Opcodes.ICONST_0);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(1, 1);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        NullCheckElimination checks = analyze(body);
+
+        assertTrue(checks.isRedundant(SsaBuilderTest.find(body, Opcodes.GETFIELD)));
+    }
+
+    @Test
+    void freshObjectIsNeverChecked() {
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "()I", null, null);
+        method.visitIntInsn(Opcodes.BIPUSH, 4);
+        method.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_INT);
+        method.visitInsn(Opcodes.ARRAYLENGTH);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(1, 0);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        NullCheckElimination checks = analyze(body);
+
+        assertTrue(checks.isRedundant(SsaBuilderTest.find(body, Opcodes.ARRAYLENGTH)));
+        assertFalse(checks.isRedundant(-1));
+    }
+
+    @Test
+    void handlerPathKeepsCheckAfterJoin() {
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        Label join = new Label();
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "()I", null, null);
+        method.visitTryCatchBlock(start, end, handler, "java/lang/RuntimeException");
+        method.visitInsn(Opcodes.ACONST_NULL);
+        method.visitVarInsn(Opcodes.ASTORE, 0);
+        method.visitLabel(start);
+        method.visitTypeInsn(Opcodes.NEW, "java/lang/Object");
+        method.visitInsn(Opcodes.DUP);
+        method.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        method.visitVarInsn(Opcodes.ASTORE, 0);
+        method.visitMethodInsn(Opcodes.INVOKESTATIC, "T", "run", "()V", false);
+        method.visitLabel(end);
+        method.visitJumpInsn(Opcodes.GOTO, join);
+        method.visitLabel(handler);
+        method.visitInsn(Opcodes.POP);
+        method.visitLabel(join);
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Object", "hashCode", "()I", false);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(2, 1);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        NullCheckElimination checks = analyze(body);
+
+        assertFalse(checks.isRedundant(SsaBuilderTest.find(body, Opcodes.INVOKEVIRTUAL)));
+    }
+
+    private static NullCheckElimination analyze(MethodBodyInfo body) {
+        NullCheckElimination checks = new NullCheckElimination();
+        checks.analyze(SsaBuilder.build(body), body.instructions, new BitSet());
+        return checks;
+    }
+
+    private static int nextGetField(MethodBodyInfo body, int after) {
+        for (int i = after + 1; i < body.instructions.size(); i++) {
+            if (body.instructions.get(i).opcode == Opcodes.GETFIELD) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No second GETFIELD");
+    }
+}
@@ -0,0 +1,173 @@
+package ru.sarkolsss.ir;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+import ru.sarkolsss.bytecode.MethodBodyAnalyzer;
+import ru.sarkolsss.bytecode.MethodBodyInfo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SsaBuilderTest {
+
+    @Test
+    void diamondJoinIsDominatedByEntryOnly() {
+        Label otherwise = new Label();
+        Label join = new Label();
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "(I)I", null, null);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitJumpInsn(Opcodes.IFEQ, otherwise);
+        method.visitInsn(Opcodes.ICONST_1);
+        method.visitVarInsn(Opcodes.ISTORE, 1);
+        method.visitJumpInsn(Opcodes.GOTO, join);
+        method.visitLabel(otherwise);
+        method.visitInsn(Opcodes.ICONST_2);
+        method.visitVarInsn(Opcodes.ISTORE, 1);
+        method.visitLabel(join);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(1, 2);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        SsaMethod ssa = SsaBuilder.build(body);
+
+        SsaBlock entry = ssa.blockOf(0);
+        SsaBlock then = ssa.blockOf(find(body, Opcodes.ICONST_1));
+        SsaBlock other = ssa.blockOf(find(body, Opcodes.ICONST_2));
+        SsaBlock exit = ssa.blockOf(find(body, Opcodes.IRETURN));
+
+        assertEquals(4, ssa.blocks.size());
+        assertNull(entry.idom);
+        assertSame(entry, then.idom);
+        assertSame(entry, other.idom);
+        assertSame(entry, exit.idom);
+        assertTrue(ssa.dominates(entry, exit));
+        assertFalse(ssa.dominates(then, exit));
+        assertFalse(ssa.dominates(other, then));
+        assertTrue(ssa.dominates(find(body, Opcodes.IFEQ), find(body, Opcodes.IRETURN)));
+        assertFalse(ssa.dominates(find(body, Opcodes.IRETURN), find(body, Opcodes.IFEQ)));
+    }
+
+    @Test
+    void joinOfDifferentStoresKeepsPhi() {
+        Label otherwise = new Label();
+        Label join = new Label();
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "(I)I", null, null);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitJumpInsn(Opcodes.IFEQ, otherwise);
+        method.visitInsn(Opcodes.ICONST_1);
+        method.visitVarInsn(Opcodes.ISTORE, 1);
+        method.visitJumpInsn(Opcodes.GOTO, join);
+        method.visitLabel(otherwise);
+        method.visitInsn(Opcodes.ICONST_2);
+        method.visitVarInsn(Opcodes.ISTORE, 1);
+        method.visitLabel(join);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(1, 2);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        SsaMethod ssa = SsaBuilder.build(body);
+
+        assertEquals(1, ssa.phiCount());
+        SsaValue phi = ssa.blockOf(find(body, Opcodes.IRETURN)).phis.get(0);
+        assertEquals(1, phi.slot);
+        assertEquals('I', phi.type);
+        assertEquals(2, phi.operands.size());
+        assertSame(phi, ssa.operands(find(body, Opcodes.IRETURN)).get(0));
+    }
+
+    @Test
+    void loopWithoutStoresPrunesPhis() {
+        Label head = new Label();
+        Label exit = new Label();
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "(Ljava/lang/Object;I)I", null, null);
+        method.visitLabel(head);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitJumpInsn(Opcodes.IFLE, exit);
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Object", "hashCode", "()I", false);
+        method.visitInsn(Opcodes.POP);
+        method.visitJumpInsn(Opcodes.GOTO, head);
+        method.visitLabel(exit);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(1, 2);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        SsaMethod ssa = SsaBuilder.build(body);
+
+        assertEquals(0, ssa.phiCount());
+        SsaValue receiver = ssa.operands(find(body, Opcodes.INVOKEVIRTUAL)).get(0);
+        assertEquals(SsaValue.Kind.PARAM, receiver.kind);
+        assertEquals(0, receiver.slot);
+    }
+
+    @Test
+    void loopCounterKeepsPhiAtHeader() {
+        Label head = new Label();
+        Label exit = new Label();
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "(I)I", null, null);
+        method.visitLabel(head);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitJumpInsn(Opcodes.IFLE, exit);
+        method.visitIincInsn(0, -1);
+        method.visitJumpInsn(Opcodes.GOTO, head);
+        method.visitLabel(exit);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(1, 1);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        SsaMethod ssa = SsaBuilder.build(body);
+
+        SsaBlock header = ssa.blockOf(find(body, Opcodes.IFLE));
+        SsaBlock latch = ssa.blockOf(find(body, Opcodes.IINC));
+        assertSame(header, latch.idom);
+        assertSame(header, ssa.blockOf(find(body, Opcodes.IRETURN)).idom);
+        assertEquals(1, ssa.phiCount());
+        assertEquals(1, header.phis.size());
+        assertTrue(header.phis.get(0).operands.contains(ssa.result(find(body, Opcodes.IINC))));
+    }
+
+    @Test
+    void phiFedByAnotherPhiGetsItsType() {
+        Label head = new Label();
+        Label exit = new Label();
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "(III)I", null, null);
+        method.visitLabel(head);
+        method.visitVarInsn(Opcodes.ILOAD, 2);
+        method.visitJumpInsn(Opcodes.IFLE, exit);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitVarInsn(Opcodes.ISTORE, 0);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitInsn(Opcodes.IADD);
+        method.visitVarInsn(Opcodes.ISTORE, 1);
+        method.visitIincInsn(2, -1);
+        method.visitJumpInsn(Opcodes.GOTO, head);
+        method.visitLabel(exit);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(2, 3);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        SsaMethod ssa = SsaBuilder.build(body);
+
+        SsaBlock header = ssa.blockOf(find(body, Opcodes.IFLE));
+        assertEquals(3, header.phis.size());
+        for (SsaValue phi : header.phis) {
+            assertEquals('I', phi.type);
+        }
+    }
+
+    static int find(MethodBodyInfo body, int opcode) {
+        for (int i = 0; i < body.instructions.size(); i++) {
+            if (body.instructions.get(i).opcode == opcode) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No opcode " + opcode);
+    }
+}
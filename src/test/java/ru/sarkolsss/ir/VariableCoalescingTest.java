@@ -0,0 +1,170 @@
+package ru.sarkolsss.ir;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+import ru.sarkolsss.bytecode.InstructionInfo;
+import ru.sarkolsss.bytecode.MethodBodyAnalyzer;
+import ru.sarkolsss.bytecode.MethodBodyInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VariableCoalescingTest {
+
+    @Test
+    void reusedSlotSplitsIntoSeparateVariables() {
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "()I", null, null);
+        method.visitInsn(Opcodes.ICONST_1);
+        method.visitVarInsn(Opcodes.ISTORE, 0);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitInsn(Opcodes.POP);
+        method.visitInsn(Opcodes.ICONST_2);
+        method.visitVarInsn(Opcodes.ISTORE, 0);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(1, 1);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        VariableCoalescing variables = analyze(body);
+
+        List<InstructionInfo> accesses = accesses(body, 0);
+        assertSame(variables.variable(accesses.get(0)), variables.variable(accesses.get(1)));
+        assertSame(variables.variable(accesses.get(2)), variables.variable(accesses.get(3)));
+        assertNotSame(variables.variable(accesses.get(0)), variables.variable(accesses.get(2)));
+        assertEquals(0, variables.variable(accesses.get(0)).index);
+        assertEquals(1, variables.variable(accesses.get(2)).index);
+    }
+
+    @Test
+    void loopCounterStaysOneVariable() {
+        Label head = new Label();
+        Label exit = new Label();
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "(I)I", null, null);
+        method.visitInsn(Opcodes.ICONST_0);
+        method.visitVarInsn(Opcodes.ISTORE, 1);
+        method.visitLabel(head);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitJumpInsn(Opcodes.IF_ICMPGE, exit);
+        method.visitIincInsn(1, 1);
+        method.visitJumpInsn(Opcodes.GOTO, head);
+        method.visitLabel(exit);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(2, 2);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        VariableCoalescing variables = analyze(body);
+
+        List<InstructionInfo> accesses = accesses(body, 1);
+        assertEquals(4, accesses.size());
+        VariableCoalescing.Variable counter = variables.variable(accesses.get(0));
+        assertNotNull(counter);
+        for (InstructionInfo access : accesses) {
+            assertSame(counter, variables.variable(access));
+        }
+        assertEquals(1, counter.slot);
+        assertNull(variables.variable(accesses(body, 0).get(0)));
+    }
+
+    @Test
+    void copyIntoDeadSourceIsCoalesced() {
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "(I)I", null, null);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitInsn(Opcodes.ICONST_2);
+        method.visitInsn(Opcodes.IMUL);
+        method.visitVarInsn(Opcodes.ISTORE, 1);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitVarInsn(Opcodes.ISTORE, 2);
+        method.visitVarInsn(Opcodes.ILOAD, 2);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(2, 3);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        VariableCoalescing variables = analyze(body);
+
+        assertSame(variables.variable(accesses(body, 1).get(0)), variables.variable(accesses(body, 2).get(0)));
+        assertEquals(1, variables.variable(accesses(body, 2).get(0)).slot);
+        assertEquals(1, variables.coalescedWebs());
+    }
+
+    @Test
+    void copyWithLiveDivergingSourceIsNotCoalesced() {
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "(I)I", null, null);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitInsn(Opcodes.ICONST_2);
+        method.visitInsn(Opcodes.IMUL);
+        method.visitVarInsn(Opcodes.ISTORE, 1);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitVarInsn(Opcodes.ISTORE, 2);
+        method.visitIincInsn(1, 1);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitVarInsn(Opcodes.ILOAD, 2);
+        method.visitInsn(Opcodes.IADD);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(2, 3);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        VariableCoalescing variables = analyze(body);
+
+        assertNotSame(variables.variable(accesses(body, 1).get(0)), variables.variable(accesses(body, 2).get(0)));
+        assertEquals(0, variables.coalescedWebs());
+    }
+
+    @Test
+    void slotReadInHandlerKeepsOneVariable() {
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "(I)I", null, null);
+        method.visitTryCatchBlock(start, end, handler, "java/lang/RuntimeException");
+        method.visitInsn(Opcodes.ICONST_1);
+        method.visitVarInsn(Opcodes.ISTORE, 1);
+        method.visitLabel(start);
+        method.visitInsn(Opcodes.ICONST_2);
+        method.visitVarInsn(Opcodes.ISTORE, 1);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitInsn(Opcodes.ICONST_0);
+        method.visitInsn(Opcodes.IDIV);
+        method.visitVarInsn(Opcodes.ISTORE, 1);
+        method.visitLabel(end);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitLabel(handler);
+        method.visitInsn(Opcodes.POP);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(2, 2);
+
+        MethodBodyInfo body = MethodBodyAnalyzer.analyzeMethod(method, "T");
+        VariableCoalescing variables = analyze(body);
+
+        List<InstructionInfo> accesses = accesses(body, 1);
+        VariableCoalescing.Variable first = variables.variable(accesses.get(0));
+        for (InstructionInfo access : accesses) {
+            assertSame(first, variables.variable(access));
+        }
+    }
+
+    private static VariableCoalescing analyze(MethodBodyInfo body) {
+        VariableCoalescing variables = new VariableCoalescing();
+        variables.analyze(SsaBuilder.build(body), body);
+        return variables;
+    }
+
+    private static List<InstructionInfo> accesses(MethodBodyInfo body, int slot) {
+        List<InstructionInfo> accesses = new ArrayList<>();
+        for (InstructionInfo insn : body.instructions) {
+            if (insn.var == slot && ((insn.opcode >= Opcodes.ILOAD && insn.opcode <= Opcodes.DLOAD)
+                    || (insn.opcode >= Opcodes.ISTORE && insn.opcode <= Opcodes.DSTORE)
+                    || insn.opcode == Opcodes.IINC)) {
+                accesses.add(insn);
+            }
+        }
+        return accesses;
+    }
+}